@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency benchmark for following a growing file. A FollowTranslator follows a file in a temporary directory on a
+ * thread of its own while lines of english.txt are appended to the file one at a time, and every append is timed
+ * until its translation shows up in the destination. Then the file is left alone for a while and the CPU time the
+ * process uses meanwhile is measured, which is what following costs while nothing is written.
+ *
+ * Run from the project directory:
+ *   javac -d out/bench src/*.java bench/*.java
+ *   java -cp out/bench FollowLatency --out=follow-results.json
+ * Options: "--lines=N" (appends measured, default 500), "--warmup=N" (appends not measured, default 200),
+ * "--pause=N" (milliseconds between two appends, default 5), "--idle=N" (seconds of idle time measured, default
+ * 5), "--poll=N" (poll interval of the follower in milliseconds, default 1000) and "--samples=dir" (where
+ * english.txt is, default src).
+ */
+public class FollowLatency {
+
+    // *****************
+
+    public static void main(String[] args) throws Exception {
+        int lines = Integer.parseInt(option(args, "lines", "500"));
+        int warmup = Integer.parseInt(option(args, "warmup", "200"));
+        long pause = Long.parseLong(option(args, "pause", "5"));
+        long idle = Long.parseLong(option(args, "idle", "5"));
+        long poll = Long.parseLong(option(args, "poll", "1000"));
+        List<String> english = Files.readString(Paths.get(option(args, "samples", "src"), "english.txt"),
+                StandardCharsets.UTF_8).lines().filter(line -> !line.isBlank()).toList();
+
+        Path work = Files.createTempDirectory("follow");
+        Path source = work.resolve("app.log");
+        Path dest = work.resolve("app-pl.log");
+        Files.createFile(source);
+        WordTranslator words = new WordTranslator(Dialect.STANDARD);
+        FollowTranslator follower = new FollowTranslator(words::encodeSentence, poll);
+        AtomicReference<IOException> failure = new AtomicReference<>();   // Why the follower stopped, if it failed
+        Thread following = new Thread(() -> {
+            try {
+                follower.follow(source, dest);
+            } catch (InterruptedException interruptedException) {   // Stopped by the benchmark
+            } catch (IOException ioException) {
+                failure.set(ioException);
+            }
+        }, "follower");
+        following.start();
+
+        long[] latencies = new long[lines];
+        try (OutputStream log = Files.newOutputStream(source, StandardOpenOption.APPEND)) {
+            Thread.sleep(200);                                        // Let the follower start watching
+            for (int i = 0; i < warmup + lines; ++i) {
+                byte[] line = (english.get(i % english.size()) + "\n").getBytes(StandardCharsets.UTF_8);
+                long destSize = Files.size(dest);
+                long start = System.nanoTime();
+                log.write(line);                                      // Unbuffered, goes straight to the file
+                while (Files.size(dest) == destSize) {                // Wait for the translation to show up
+                    if (!following.isAlive())                         // It never will
+                        throw new IOException("The follower stopped", failure.get());
+                    LockSupport.parkNanos(20_000);
+                }
+                if (i >= warmup)
+                    latencies[i - warmup] = System.nanoTime() - start;
+                Thread.sleep(pause);
+            }
+        }
+        Arrays.sort(latencies);
+
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuBefore = os.getProcessCpuTime();
+        Thread.sleep(idle * 1000);
+        double idleCpuMillis = (os.getProcessCpuTime() - cpuBefore) / 1e6 / idle;
+        following.interrupt();
+        following.join();
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(dest);
+        Files.deleteIfExists(work);
+
+        double p50 = percentile(latencies, 0.50) / 1e6;
+        double p99 = percentile(latencies, 0.99) / 1e6;
+        double max = latencies[lines - 1] / 1e6;
+        System.out.println(String.format(Locale.ROOT, "append to translation: p50 %.3f ms, p99 %.3f ms, max %.3f ms; "
+                + "idle CPU %.2f ms per second", p50, p99, max, idleCpuMillis));
+        try (PrintWriter json = new PrintWriter(Files.newBufferedWriter(Paths.get(option(args, "out",
+                "follow-results.json")), StandardCharsets.UTF_8))) {
+            json.println("{");
+            json.println("  \"jvm\": \"" + System.getProperty("java.vm.name") + " "
+                    + System.getProperty("java.version") + "\",");
+            json.println("  \"os\": \"" + System.getProperty("os.name") + "\",");
+            json.println("  \"appends\": " + lines + ",");
+            json.println("  \"pollMillis\": " + poll + ",");
+            json.println(String.format(Locale.ROOT, "  \"latencyP50Ms\": %.3f,", p50));
+            json.println(String.format(Locale.ROOT, "  \"latencyP99Ms\": %.3f,", p99));
+            json.println(String.format(Locale.ROOT, "  \"latencyMaxMs\": %.3f,", max));
+            json.println(String.format(Locale.ROOT, "  \"idleCpuMsPerSecond\": %.3f", idleCpuMillis));
+            json.println("}");
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the value at the fraction of the sorted values
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+
+    // *****************
+
+    /**
+     * @return the value of the "--name=value" argument, or the default if there is none
+     */
+    private static String option(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + name + "="))
+                return arg.substring(name.length() + 3);
+        }
+        return defaultValue;
+    }
+
+    // *****************
+}
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Load test for the translation server. Several clients send requests back to back over kept-alive connections
+ * for a while, and the latency of every request is recorded, so the report has the requests per second and the
+ * latency percentiles the server delivers. Requests made during the warmup are not counted.
+ *
+ * Start a server, then run the load test from the project directory:
+ *   javac -d out/bench src/*.java bench/*.java
+ *   java -cp out/bench PigLatin --serve=8080
+ *   java -cp out/bench ServerLoadTest --url=http://127.0.0.1:8080
+ * Options: "--action=encode|decode", "--clients=N" (requests in flight at once, default 8), "--batch=N" (lines
+ * per request, sent to /batch/action when more than 1, default 1), "--seconds=N" (length of the test, default
+ * 10), "--warmup=N" (seconds before measuring, default 3) and "--samples=dir" (where english.txt and piglatin.txt
+ * are, default src).
+ */
+public class ServerLoadTest {
+
+    // *****************
+
+    public static void main(String[] args) throws Exception {
+        String url = option(args, "url", "http://127.0.0.1:8080");
+        String action = option(args, "action", "encode");
+        int clients = Integer.parseInt(option(args, "clients", "8"));
+        int batch = Integer.parseInt(option(args, "batch", "1"));
+        long seconds = Long.parseLong(option(args, "seconds", "10"));
+        long warmup = Long.parseLong(option(args, "warmup", "3"));
+        String sample = action.equals("encode") ? "english.txt" : "piglatin.txt";
+        String[] lines = Files.readString(Paths.get(option(args, "samples", "src"), sample), StandardCharsets.UTF_8)
+                .lines().filter(line -> !line.isBlank()).toArray(String[]::new);
+        URI uri = URI.create(url + (batch > 1 ? "/batch/" : "/") + action);
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5)).build();
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup * 1_000_000_000L;         // Requests sent before this are warmup
+        long end = measureFrom + seconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+        AtomicReference<Exception> firstError = new AtomicReference<>();   // Shown in the report
+        List<long[]> latencies = new ArrayList<>();                  // Latencies of every client
+        List<Thread> threads = new ArrayList<>();
+
+        for (int client = 0; client < clients; ++client) {
+            long[][] recorded = {new long[1 << 16]};
+            int[] count = {0};
+            int first = client;
+            Thread thread = new Thread(() -> {
+                int next = first;                                    // Clients start at different lines
+                while (true) {
+                    long sent = System.nanoTime();
+                    if (sent >= end)
+                        break;
+                    StringBuilder body = new StringBuilder();
+                    for (int i = 0; i < batch; ++i)
+                        body.append(lines[next++ % lines.length]).append('\n');
+                    try {
+                        HttpResponse<String> response = http.send(HttpRequest.newBuilder(uri)
+                                .POST(HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8))
+                                .build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                        if (response.statusCode() != 200)
+                            throw new IOException("HTTP " + response.statusCode());
+                    } catch (IOException | InterruptedException exception) {
+                        firstError.compareAndSet(null, exception);
+                        if (sent >= measureFrom)
+                            errors.incrementAndGet();
+                        continue;
+                    }
+                    if (sent < measureFrom)
+                        continue;
+                    if (count[0] == recorded[0].length)
+                        recorded[0] = Arrays.copyOf(recorded[0], 2 * count[0]);
+                    recorded[0][count[0]++] = System.nanoTime() - sent;
+                }
+                synchronized (latencies) {
+                    latencies.add(Arrays.copyOf(recorded[0], count[0]));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        report(uri, clients, batch, seconds, latencies, errors.get());
+        if (firstError.get() != null)
+            System.out.println("First error: " + firstError.get());
+    }
+
+    // *****************
+
+    /**
+     * This function will print the throughput and latency percentiles of the measured requests
+     */
+    private static void report(URI uri, int clients, int batch, long seconds, List<long[]> latencies, long errors) {
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+
+        System.out.println("Target:     " + uri + " (" + clients + " clients, " + batch + " lines per request)");
+        System.out.println("Requests:   " + all.length + " ok, " + errors + " failed in " + seconds + " s");
+        if (all.length == 0)
+            return;
+        System.out.println(String.format(Locale.ROOT, "Throughput: %.1f requests/s, %.1f lines/s",
+                (double) all.length / seconds, (double) all.length * batch / seconds));
+        System.out.println(String.format(Locale.ROOT, "Latency:    p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+                percentile(all, 50) / 1e6, percentile(all, 90) / 1e6, percentile(all, 99) / 1e6,
+                all[all.length - 1] / 1e6));
+    }
+
+    // *****************
+
+    /**
+     * @return the latency the given percent of the sorted latencies are at or under
+     */
+    private static long percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    // *****************
+
+    /**
+     * @return the value of the "--name=value" program argument, or the default value if there is none
+     */
+    private static String option(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + name + "="))
+                return arg.substring(name.length() + 3);
+        }
+        return defaultValue;
+    }
+
+    // *****************
+}
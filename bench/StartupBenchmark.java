@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Startup benchmark for the command line. A one-word or small-file translation is over long before the JIT does
+ * anything, so what it costs is starting the JVM and loading the classes, and the only way to measure that is to
+ * launch the program again and again. Every run starts a new JVM and measures the time to the first byte the
+ * program prints and the time until it exits:
+ * - word: "pig" piped through "encode --filter", the first output is the translation.
+ * - smallFile: the first lines of english.txt translated from file to file, the first output is the message that
+ *   the translation is done.
+ * Each case is run from the jar, and from the jar with the AppCDS archive of build-cds.sh when there is one.
+ *
+ * Build the jar and the archive, then run from the project directory:
+ *   sh build-cds.sh
+ *   javac -d out/bench src/*.java bench/*.java
+ *   java -cp out/bench StartupBenchmark --out=startup-results.json
+ * Options: "--jar=file" (default out/cds/piglatin.jar), "--archive=file" (default out/cds/piglatin.jsa),
+ * "--samples=dir" (where english.txt is, default src), "--lines=N" (lines of the small file, default 20),
+ * "--warmup=N" (runs not measured, so the files are cached, default 3) and "--runs=N" (default 20).
+ */
+public class StartupBenchmark {
+    private final String launcher;                     // The java launcher of the JVM running the benchmark
+    private final int warmup;                          // Runs of every case that are not measured
+    private final int runs;                            // Measured runs of every case
+    private final List<Result> results;                // Results of the cases run so far
+
+    // *****************
+
+    /**
+     * The times of one case
+     */
+    private static final class Result {
+        String name;            // Name of the case
+        String mode;            // "jar" or "cds"
+        long[] firstOutput;     // Nanoseconds from the launch to the first byte printed, of every run
+        long[] exit;            // Nanoseconds from the launch to the exit, of every run
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets up the benchmark settings
+     * @param warmup runs of every case that are not measured
+     * @param runs measured runs of every case
+     */
+    private StartupBenchmark(int warmup, int runs) {
+        this.launcher = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        this.warmup = warmup;
+        this.runs = runs;
+        this.results = new ArrayList<>();
+    }
+
+    // *****************
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path jar = Paths.get(option(args, "jar", "out/cds/piglatin.jar")).toAbsolutePath();
+        Path archive = Paths.get(option(args, "archive", "out/cds/piglatin.jsa")).toAbsolutePath();
+        Path samples = Paths.get(option(args, "samples", "src"));
+        int lines = Integer.parseInt(option(args, "lines", "20"));
+        StartupBenchmark benchmark = new StartupBenchmark(Integer.parseInt(option(args, "warmup", "3")),
+                Integer.parseInt(option(args, "runs", "20")));
+
+        if (!Files.isRegularFile(jar))
+            throw new IllegalArgumentException(jar + " not found, build it with build-cds.sh");
+        Path work = Files.createTempDirectory("startup");
+        Path source = work.resolve("small.txt");
+        Path dest = work.resolve("small-pl.txt");
+        List<String> english = Files.readAllLines(samples.resolve("english.txt"), StandardCharsets.UTF_8);
+        Files.write(source, english.subList(0, Math.min(lines, english.size())), StandardCharsets.UTF_8);
+
+        List<String> modes = new ArrayList<>(List.of("jar"));
+        if (Files.isRegularFile(archive))
+            modes.add("cds");
+        for (String mode : modes) {
+            List<String> jvm = new ArrayList<>();
+            if (mode.equals("cds"))                               // Fail rather than quietly run without it
+                jvm.addAll(List.of("-Xshare:on", "-XX:SharedArchiveFile=" + archive));
+            jvm.addAll(List.of("-cp", jar.toString(), "PigLatin"));
+            benchmark.run("word", mode, jvm, List.of("encode", "--filter"), "pig\n", "ig-pay");
+            benchmark.run("smallFile", mode, jvm, List.of(source.toString(), dest.toString(), "encode"), "", "");
+        }
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(dest);
+        Files.deleteIfExists(work);
+        benchmark.write(Paths.get(option(args, "out", "startup-results.json")));
+    }
+
+    // *****************
+
+    /**
+     * This function will launch the program for one case, warm up, measure and save the result
+     * @param name name of the case
+     * @param mode "jar" or "cds"
+     * @param jvm the options of the JVM and the main class
+     * @param args the arguments of the program
+     * @param input what is piped into the program
+     * @param expected what the output must start with
+     */
+    private void run(String name, String mode, List<String> jvm, List<String> args, String input, String expected)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(launcher);
+        command.addAll(jvm);
+        command.addAll(args);
+        Result result = new Result();
+        result.name = name;
+        result.mode = mode;
+        result.firstOutput = new long[runs];
+        result.exit = new long[runs];
+
+        for (int i = 0; i < warmup; ++i)
+            launch(command, input, expected, new long[1], new long[1], 0);
+        for (int i = 0; i < runs; ++i)
+            launch(command, input, expected, result.firstOutput, result.exit, i);
+        Arrays.sort(result.firstOutput);
+        Arrays.sort(result.exit);
+        System.out.println(String.format(Locale.ROOT, "%-10s %-4s first output %6.1f ms (min %6.1f), " +
+                        "exit %6.1f ms (min %6.1f)", name, mode, median(result.firstOutput) / 1e6,
+                result.firstOutput[0] / 1e6, median(result.exit) / 1e6, result.exit[0] / 1e6));
+        results.add(result);
+    }
+
+    // *****************
+
+    /**
+     * This function will launch the program once and time it
+     * @param command the command line
+     * @param input what is piped into the program
+     * @param expected what the output must start with
+     * @param firstOutput where the time to the first byte printed goes
+     * @param exit where the time to the exit goes
+     * @param run index of the times to set
+     */
+    private static void launch(List<String> command, String input, String expected, long[] firstOutput,
+                               long[] exit, int run) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            stdin.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream stdout = process.getInputStream()) {
+            int first = stdout.read();
+            firstOutput[run] = System.nanoTime() - start;
+            String output = (first < 0 ? "" : (char) first)
+                    + new String(stdout.readAllBytes(), StandardCharsets.UTF_8);
+            if (first < 0 || !output.startsWith(expected))
+                throw new IllegalStateException("Unexpected output of " + command + ": " + output);
+        }
+        process.waitFor();
+        exit[run] = System.nanoTime() - start;
+    }
+
+    // *****************
+
+    /**
+     * @return the middle of the sorted times
+     */
+    private static double median(long[] sorted) {
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    // *****************
+
+    /**
+     * This function will write every result as JSON
+     * @param path the file to write to
+     * @throws IOException if writing fails
+     */
+    private void write(Path path) throws IOException {
+        try (PrintWriter json = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            json.println("{");
+            json.println("  \"jvm\": \"" + System.getProperty("java.vm.name") + " "
+                    + System.getProperty("java.version") + "\",");
+            json.println("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ",");
+            json.println("  \"timestamp\": \"" + java.time.Instant.now() + "\",");
+            json.println("  \"warmupRuns\": " + warmup + ",");
+            json.println("  \"measuredRuns\": " + runs + ",");
+            json.println("  \"benchmarks\": [");
+            for (int i = 0; i < results.size(); ++i) {
+                Result result = results.get(i);
+                json.print(String.format(Locale.ROOT, "    {\"benchmark\": \"%s\", \"mode\": \"%s\", " +
+                                "\"firstOutputMedianMs\": %.2f, \"firstOutputMinMs\": %.2f, " +
+                                "\"exitMedianMs\": %.2f, \"exitMinMs\": %.2f", result.name, result.mode,
+                        median(result.firstOutput) / 1e6, result.firstOutput[0] / 1e6, median(result.exit) / 1e6,
+                        result.exit[0] / 1e6));
+                json.println(i + 1 < results.size() ? "}," : "}");
+            }
+            json.println("  ]");
+            json.println("}");
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the value of the "--name=value" argument, or the default if there is none
+     */
+    private static String option(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + name + "="))
+                return arg.substring(name.length() + 3);
+        }
+        return defaultValue;
+    }
+
+    // *****************
+}
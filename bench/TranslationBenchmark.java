@@ -0,0 +1,454 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmark suite for the translation core. It follows the JMH way of measuring without needing a build tool:
+ * every benchmark is warmed up first, then measured over several timed iterations, and the score is the average
+ * time per operation with its error over the iterations. Allocation is measured per operation from the thread's
+ * allocated bytes, which is what the JMH GC profiler reports as gc.alloc.rate.norm.
+ *
+ * Compile and run from the project directory:
+ *   javac -d out/bench src/*.java bench/*.java
+ *   java -cp out/bench TranslationBenchmark --out=bench-results.json
+ * Options: "--samples=dir" (where english.txt and piglatin.txt are, default src), "--size=MB" (size the sample
+ * texts are scaled up to, default 4), "--dialect=rules" (as taken by PigLatin), "--cache=N" (words cached for each direction, default 0 for no cache),
+ * "--warmup=N", "--iterations=N", "--time=ms" (length of one iteration) and "--filter=text" (only run benchmarks whose name contains the text).
+ * The results are written as JSON so runs of different releases can be compared.
+ */
+public class TranslationBenchmark {
+    private static volatile long sink;                 // Keeps the JIT from dropping the measured work
+
+    private final WordTranslator translator;           // The translation core being measured
+    private final StringBuilder out;                   // Output buffer reused by every operation
+    private final int warmup;                          // Warmup iterations per benchmark
+    private final int iterations;                      // Measured iterations per benchmark
+    private final long iterationNanos;                 // Length of one iteration
+    private final List<Result> results;                // Results of the benchmarks run so far
+
+    // *****************
+
+    /**
+     * A benchmarked piece of work that returns something derived from its output
+     */
+    private interface Operation {
+        long run();
+    }
+
+    // *****************
+
+    /**
+     * The score of one benchmark
+     */
+    private static final class Result {
+        String name;            // Name of the benchmark
+        long bytesPerOp;        // Input bytes handled by one operation, 0 if not a throughput benchmark
+        double score;           // Average ns per operation
+        double error;           // Standard deviation of the score over the iterations
+        double allocPerOp;      // Bytes allocated per operation
+        long operations;        // Operations run while measuring
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets up the benchmark settings
+     * @param dialect the rules of the dialect to translate with, as taken by Dialect.parse
+     * @param cacheCapacity words cached for each direction, 0 for no cache
+     * @param warmup warmup iterations per benchmark
+     * @param iterations measured iterations per benchmark
+     * @param iterationMillis length of one iteration in milliseconds
+     */
+    private TranslationBenchmark(String dialect, int cacheCapacity, int warmup, int iterations, long iterationMillis) {
+        this.translator = new WordTranslator(Dialect.parse(dialect), cacheCapacity);
+        this.out = new StringBuilder();
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        this.results = new ArrayList<>();
+    }
+
+    // *****************
+
+    public static void main(String[] args) throws IOException {
+        String samples = option(args, "samples", "src");
+        String output = option(args, "out", "bench-results.json");
+        String filter = option(args, "filter", "");
+        int size = Integer.parseInt(option(args, "size", "4")) << 20;
+        TranslationBenchmark benchmark = new TranslationBenchmark(option(args, "dialect", "standard"),
+                Integer.parseInt(option(args, "cache", "0")),
+                Integer.parseInt(option(args, "warmup", "3")), Integer.parseInt(option(args, "iterations", "5")),
+                Long.parseLong(option(args, "time", "1000")));
+
+        String english = Files.readString(Paths.get(samples, "english.txt"), StandardCharsets.UTF_8);
+        String pigLatin = Files.readString(Paths.get(samples, "piglatin.txt"), StandardCharsets.UTF_8);
+        String[] englishWords = english.split("\\s+");
+        String[] pigLatinWords = pigLatin.split("\\s+");
+        String[] englishLines = scale(english, size);
+        String[] pigLatinLines = scale(pigLatin, size);
+        String[] punctuationLines = scale(punctuate(english), size);
+        String[] symbolLines = scale(symbols(english), size);
+
+        benchmark.words("encodeWord", filter, englishWords, true);
+        benchmark.words("decodeWord", filter, pigLatinWords, false);
+        benchmark.symbols("isSequenceOfSymbols", filter, englishWords);
+        benchmark.text("encodeText.sample", filter, englishLines, true);
+        benchmark.text("decodeText.sample", filter, pigLatinLines, false);
+        benchmark.text("encodeText.punctuation", filter, punctuationLines, true);
+        benchmark.text("decodeText.punctuation", filter, scale(punctuate(pigLatin), size), false);
+        benchmark.text("encodeText.symbols", filter, symbolLines, true);
+        benchmark.text("encodeText.longLines", filter, scale(join(english, 64), size), true);
+        benchmark.text("decodeText.longLines", filter, scale(join(pigLatin, 64), size), false);
+        benchmark.layout("encodeText.keepLayout", filter, String.join("\n", englishLines), true);
+        benchmark.layout("decodeText.keepLayout", filter, String.join("\n", pigLatinLines), false);
+        byte[] document = String.join("\n", scale(join(english, 64), size)).getBytes(StandardCharsets.UTF_8);
+        benchmark.lineEnds("lineEnds.swar", filter, document, true);
+        benchmark.lineEnds("lineEnds.scalar", filter, document, false);
+        byte[] text = String.join("\n", englishLines).getBytes(StandardCharsets.UTF_8);
+        benchmark.utf8("utf8.asciiBytes", filter, text, true);
+        benchmark.utf8("utf8.decoded", filter, text, false);
+        benchmark.write(Paths.get(output));
+    }
+
+    // *****************
+
+    /**
+     * This function will measure translating one word at a time, cycling through the words
+     */
+    private void words(String name, String filter, String[] words, boolean encode) {
+        int[] next = {0};                                         // The word to translate next
+        run(name, filter, 0, () -> {
+            String word = words[next[0]++ % words.length];
+            out.setLength(0);
+            if (encode)
+                translator.encodeWord(word, 0, word.length(), out);
+            else
+                translator.decodeWord(word, 0, word.length(), out);
+            return out.length();
+        });
+    }
+
+    // *****************
+
+    /**
+     * This function will measure the symbol check of the tokenizer on one word at a time
+     */
+    private void symbols(String name, String filter, String[] words) {
+        int[] next = {0};                                         // The word to check next
+        run(name, filter, 0, () -> {
+            String word = words[next[0]++ % words.length];
+            return translator.isSequenceOfSymbols(word, 0, word.length()) ? 1 : 0;
+        });
+    }
+
+    // *****************
+
+    /**
+     * This function will measure translating a whole text line by line into the reused output buffer
+     */
+    private void text(String name, String filter, String[] lines, boolean encode) {
+        long bytes = 0;                                           // Size of the text in UTF-8
+        for (String line : lines)
+            bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+        run(name, filter, bytes, () -> {
+            long length = 0;
+            for (String line : lines) {
+                out.setLength(0);
+                if (encode)
+                    translator.encodeSentence(line, 0, line.length(), out);
+                else
+                    translator.decodeSentence(line, 0, line.length(), out);
+                length += out.length();
+            }
+            return length;
+        });
+    }
+
+    // *****************
+
+    /**
+     * This function will measure translating a whole text keeping its layout, in blocks of 4096 chars or so like
+     * Translator streams it, into the reused output buffer. Compared to the line by line benchmark of the same text
+     * it shows what copying the untouched text in spans costs
+     */
+    private void layout(String name, String filter, String text, boolean encode) {
+        run(name, filter, text.getBytes(StandardCharsets.UTF_8).length, () -> {
+            long length = 0;
+            for (int start = 0, end; start < text.length(); start = end) {
+                end = Math.min(text.length(), start + 4096);
+                while (end < text.length() && !WordTranslator.isWhitespace(text.charAt(end - 1)))
+                    ++end;
+                out.setLength(0);
+                if (encode)
+                    translator.encodeKeepingLayout(text, start, end, out);
+                else
+                    translator.decodeKeepingLayout(text, start, end, out);
+                length += out.length();
+            }
+            return length;
+        });
+    }
+
+    // *****************
+
+    /**
+     * This function will measure finding every line end of a long ASCII document in UTF-8, with the scanner that
+     * looks at 8 bytes at a time or with a loop that looks at one byte at a time
+     */
+    private void lineEnds(String name, String filter, byte[] document, boolean swar) {
+        run(name, filter, document.length, () -> {
+            long lines = 0;
+            for (int line = 0; line < document.length; ++lines) {
+                int end = swar ? TokenScanner.indexOfLineEnd(document, line, document.length)
+                        : scalarIndexOfLineEnd(document, line, document.length);
+                line = end < 0 ? document.length : end + 1;
+            }
+            return lines;
+        });
+    }
+
+    // *****************
+
+    /**
+     * This function will measure encoding an ASCII document in UTF-8 line by line into UTF-8 bytes, translating
+     * the bytes through an AsciiBytes view and narrowing the translation back into bytes like the NIO engine, or
+     * decoding every line into a String and encoding the translation with a charset encoder
+     */
+    private void utf8(String name, String filter, byte[] document, boolean asciiBytes) {
+        AsciiBytes view = new AsciiBytes();
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        ByteBuffer encoded = ByteBuffer.allocate(1 << 16);
+        char[] chars = new char[1 << 16];
+        run(name, filter, document.length, () -> {
+            long length = 0;
+            for (int line = 0; line < document.length; ) {
+                int end = TokenScanner.indexOfLineEnd(document, line, document.length);
+                end = end < 0 ? document.length : end;
+                out.setLength(0);
+                if (asciiBytes)
+                    translator.encodeSentence(view.wrap(document, line, end), 0, end - line, out);
+                else {
+                    String text = new String(document, line, end - line, StandardCharsets.UTF_8);
+                    translator.encodeSentence(text, 0, text.length(), out);
+                }
+                out.getChars(0, out.length(), chars, 0);
+                encoded.clear();
+                if (asciiBytes) {
+                    byte[] array = encoded.array();
+                    for (int i = 0; i < out.length(); ++i)
+                        array[i] = (byte) chars[i];
+                    encoded.position(out.length());
+                } else
+                    encoder.reset().encode(CharBuffer.wrap(chars, 0, out.length()), encoded, true);
+                length += encoded.position();
+                line = end + 1;
+            }
+            return length;
+        });
+    }
+
+    // *****************
+
+    /**
+     * @return the index of the first "\n" or "\r" in the range, one byte at a time, or -1 if there is none
+     */
+    private static int scalarIndexOfLineEnd(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (bytes[i] == '\n' || bytes[i] == '\r')
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * This function will warm the operation up, measure it and save the result
+     * @param name name of the benchmark
+     * @param filter only run the benchmark if its name contains this
+     * @param bytesPerOp input bytes handled by one operation, 0 if not a throughput benchmark
+     * @param operation the work to measure
+     */
+    private void run(String name, String filter, long bytesPerOp, Operation operation) {
+        if (!name.contains(filter))
+            return;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double[] scores = new double[iterations];         // ns per operation of every measured iteration
+        long operations = 0;                              // Operations of all measured iterations
+        long allocated = 0;                               // Bytes allocated by all measured iterations
+
+        for (int i = 0; i < warmup + iterations; ++i) {
+            long count = 0;
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long elapsed;
+            do {                                          // Run whole operations until the iteration is over
+                sink += operation.run();
+                ++count;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+            long allocatedAfter = threads.getThreadAllocatedBytes(thread);
+            if (i < warmup)
+                continue;
+            scores[i - warmup] = (double) elapsed / count;
+            operations += count;
+            allocated += allocatedAfter - allocatedBefore;
+        }
+
+        Result result = new Result();
+        result.name = name;
+        result.bytesPerOp = bytesPerOp;
+        result.score = Arrays.stream(scores).average().orElse(0);
+        result.error = Math.sqrt(Arrays.stream(scores).map(s -> (s - result.score) * (s - result.score))
+                .sum() / Math.max(1, iterations - 1));
+        result.allocPerOp = (double) allocated / operations;
+        result.operations = operations;
+        results.add(result);
+        System.out.println(String.format(Locale.ROOT, "%-26s %14.1f +- %10.1f ns/op %12.1f B/op", name,
+                result.score, result.error, result.allocPerOp)
+                + (bytesPerOp > 0 ? String.format(Locale.ROOT, " %10.1f MB/s", megabytesPerSecond(result)) : ""));
+    }
+
+    // *****************
+
+    /**
+     * This function will write every result as JSON
+     * @param path the file to write to
+     * @throws IOException if writing fails
+     */
+    private void write(Path path) throws IOException {
+        try (PrintWriter json = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            json.println("{");
+            json.println("  \"jvm\": \"" + System.getProperty("java.vm.name") + " "
+                    + System.getProperty("java.version") + "\",");
+            json.println("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ",");
+            json.println("  \"timestamp\": \"" + java.time.Instant.now() + "\",");
+            json.println("  \"warmupIterations\": " + warmup + ",");
+            json.println("  \"measurementIterations\": " + iterations + ",");
+            json.println("  \"iterationMillis\": " + iterationNanos / 1_000_000L + ",");
+            json.println("  \"benchmarks\": [");
+            for (int i = 0; i < results.size(); ++i) {
+                Result result = results.get(i);
+                json.print(String.format(Locale.ROOT, "    {\"benchmark\": \"%s\", \"mode\": \"avgt\", "
+                                + "\"score\": %.3f, \"scoreError\": %.3f, \"scoreUnit\": \"ns/op\", "
+                                + "\"gc.alloc.rate.norm\": %.3f, \"operations\": %d",
+                        result.name, result.score, result.error, result.allocPerOp, result.operations));
+                if (result.bytesPerOp > 0)
+                    json.print(String.format(Locale.ROOT, ", \"bytesPerOp\": %d, \"throughput\": %.3f, "
+                            + "\"throughputUnit\": \"MB/s\"", result.bytesPerOp, megabytesPerSecond(result)));
+                json.println(i + 1 < results.size() ? "}," : "}");
+            }
+            json.println("  ]");
+            json.println("}");
+        }
+        System.out.println("Results written to " + path);
+    }
+
+    // *****************
+
+    /**
+     * @return the input MB translated per second by the benchmark
+     */
+    private static double megabytesPerSecond(Result result) {
+        return result.bytesPerOp / result.score * 1e9 / (1 << 20);
+    }
+
+    // *****************
+
+    /**
+     * This function will repeat the lines of a sample text until the text is at least size chars long
+     * @param text the sample text
+     * @param size the size to reach
+     * @return the lines of the scaled up text
+     */
+    private static String[] scale(String text, int size) {
+        String[] sample = text.split("\n");
+        List<String> lines = new ArrayList<>();
+        long length = 0;
+
+        while (length < size) {
+            for (String line : sample) {
+                lines.add(line);
+                length += line.length() + 1;
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    // *****************
+
+    /**
+     * This function will join every few lines of the text into one long line, like paragraphs without line breaks
+     */
+    private static String join(String text, int linesPerLine) {
+        String[] lines = text.split("\n");
+        StringBuilder joined = new StringBuilder(text.length());
+
+        for (int i = 0; i < lines.length; ++i)
+            joined.append(lines[i]).append((i + 1) % linesPerLine == 0 ? '\n' : ' ');
+        return joined.toString();
+    }
+
+    // *****************
+
+    /**
+     * This function will wrap every word of the text in quotes, brackets and trailing punctuation
+     */
+    private static String punctuate(String text) {
+        String[] wrappers = {"\"%s\",", "(%s)", "'%s'...", "[%s]!", "--%s--", "%s;", "{%s}?", "*%s*:"};
+        StringBuilder punctuated = new StringBuilder();
+        int next = 0;
+
+        for (String line : text.split("\n")) {
+            for (String word : line.split(" "))
+                punctuated.append(String.format(wrappers[next++ % wrappers.length], word)).append(' ');
+            punctuated.append('\n');
+        }
+        return punctuated.toString();
+    }
+
+    // *****************
+
+    /**
+     * This function will turn every char of the text that isn't a space or newline into a symbol or number
+     */
+    private static String symbols(String text) {
+        String symbols = "!#$%&()*+,-./0123456789:;<=>?@[]^_`{|}~";
+        StringBuilder symbolic = new StringBuilder(text.length());
+
+        for (int i = 0; i < text.length(); ++i) {
+            char character = text.charAt(i);
+            symbolic.append(character == ' ' || character == '\n' ? character
+                    : symbols.charAt(character % symbols.length()));
+        }
+        return symbolic.toString();
+    }
+
+    // *****************
+
+    /**
+     * @return the value of the "--name=value" program argument, or the default value if there is none
+     */
+    private static String option(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + name + "="))
+                return arg.substring(name.length() + 3);
+        }
+        return defaultValue;
+    }
+
+    // *****************
+}
@@ -0,0 +1,47 @@
+#!/bin/sh
+# Builds the translator into a jar with an application class-data sharing (AppCDS) archive, for a command line
+# that starts fast. The JVM maps the classes of the archive already parsed and verified instead of loading them
+# one by one from the jar, which is most of the time a one-word or a small-file translation takes.
+#
+# The archive is made from training runs: every action that should start fast is run once and the classes it
+# loads (lambdas included) are listed, then all of them are dumped into one archive.
+#
+# Run from the project directory:
+#   sh build-cds.sh
+#   echo pig | java -XX:SharedArchiveFile=out/cds/piglatin.jsa -jar out/cds/piglatin.jar encode --filter
+# The archive only fits the JDK and the jar it was made with, so build it again after either changes. A JVM that
+# can't use it quietly loads the classes from the jar as usual, add -Xshare:on to make that an error instead.
+
+OUT=out/cds
+JAR=$(pwd)/$OUT/piglatin.jar
+ARCHIVE=$OUT/piglatin.jsa
+
+rm -rf out/cds
+mkdir -p "$OUT/classes" || exit 1
+javac -d "$OUT/classes" src/*.java || exit 1
+jar --create --file "$JAR" --main-class PigLatin -C "$OUT/classes" . || exit 1
+
+TRAINING=$(mktemp -d) || exit 1
+trap 'rm -rf "$TRAINING"' EXIT
+
+# PigLatin exits with 1 when it succeeds, so the exit codes of the training runs are not checked
+train() {
+    list=$1
+    shift
+    java -XX:DumpLoadedClassList="$TRAINING/$list" -jar "$JAR" "$@" > /dev/null 2>&1
+}
+
+echo "pig" | train filter-encode.classlist encode --filter
+echo "ig-pay" | train filter-decode.classlist decode --filter
+echo "pig" | train manual.classlist encode
+train file-encode.classlist src/english.txt "$TRAINING/english-pl.txt" encode
+train file-decode.classlist src/piglatin.txt "$TRAINING/piglatin-en.txt" decode
+train file-nio.classlist src/english.txt "$TRAINING/english-nio.txt" encode --io=nio
+train rules.classlist
+
+cat "$TRAINING"/*.classlist | awk '!seen[$0]++' > "$OUT/piglatin.classlist"
+java -Xshare:dump -XX:SharedClassListFile="$OUT/piglatin.classlist" -XX:SharedArchiveFile="$ARCHIVE" \
+    -cp "$JAR" > "$OUT/dump.log" 2>&1 || { cat "$OUT/dump.log"; exit 1; }
+
+echo "Built $OUT/piglatin.jar and its archive $ARCHIVE. Run it with:"
+echo "  java -XX:SharedArchiveFile=$ARCHIVE -jar $OUT/piglatin.jar [args]"
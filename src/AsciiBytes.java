@@ -0,0 +1,78 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Shows a range of ASCII bytes as chars without decoding or copying them. ASCII is the same in UTF-8 and UTF-16,
+ * so every byte is the char, and a line of UTF-8 input that has no byte above 0x7F can be translated straight
+ * from the bytes it was read into.
+ * The view can be moved to another range at any time, so a single instance is reused for every line, and it is
+ * only as safe to share between threads as the bytes under it.
+ */
+public final class AsciiBytes implements CharSequence {
+    private byte[] bytes = new byte[0];                  // The bytes being shown
+    private int start;                                   // Index of the first byte of the range
+    private int length;                                  // Number of bytes in the range
+
+    // *****************
+
+    /**
+     * This function will move the view to a range of bytes. The bytes must all be ASCII
+     * @param bytes the bytes to show
+     * @param start index of the first byte of the range
+     * @param end index one past the last byte of the range
+     * @return this view
+     */
+    public AsciiBytes wrap(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        this.start = start;
+        this.length = end - start;
+        return this;
+    }
+
+    // *****************
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    // *****************
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes[start + Objects.checkIndex(index, length)];
+    }
+
+    // *****************
+
+    /**
+     * This function will find the first copy of a char in a range of the view, 8 bytes at a time
+     * @param from index of the first char to search
+     * @param to index one past the last char to search
+     * @param character the char to find
+     * @return the index of the char, or -1 if it is not in the range
+     */
+    public int indexOf(int from, int to, char character) {
+        if (character > 0x7F)                            // Only ASCII is ever shown
+            return -1;
+        int index = TokenScanner.indexOf(bytes, start + from, start + to, (byte) character);
+        return index < 0 ? -1 : index - start;
+    }
+
+    // *****************
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        Objects.checkFromToIndex(from, to, length);
+        return new String(bytes, start + from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    // *****************
+
+    @Override
+    public String toString() {
+        return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // *****************
+}
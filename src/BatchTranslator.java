@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This translates a whole batch of files in one process. The sources are every .txt or .txt.gz file of a directory,
+ * or every file that matches a glob such as "in/**.txt", and every translation is written to the same relative path
+ * under the destination directory, compressed if the source was.
+ * Every file is translated on a thread of its own: virtual threads when the JVM has them (Java 21 and up), or else
+ * a pool with a thread for every file that may be open at once. Translating a file holds its source and its
+ * destination open, so a semaphore makes sure no more than the limit of files are open at the same time, whatever
+ * kind of threads are used.
+ * A file that fails doesn't stop the batch: every file gets a Result that says whether it was translated.
+ */
+public class BatchTranslator {
+    private static final String GLOB_CHARS = "*?[{";      // Chars that make a source pattern a glob
+
+    private final FileTranslation fileTranslation;        // Translates one source file into one destination file
+    private final int maxOpenFiles;                       // Most files open at once
+
+    // *****************
+
+    /**
+     * Translates one source file into one destination file
+     */
+    @FunctionalInterface
+    public interface FileTranslation {
+
+        /**
+         * @param source the file to read from
+         * @param dest the file to write to, its directory already exists
+         * @throws IOException if reading or writing fails
+         */
+        void translate(Path source, Path dest) throws IOException;
+    }
+
+    // *****************
+
+    /**
+     * The outcome of translating one file of the batch
+     */
+    public static final class Result {
+        private final Path source;          // The file that was read
+        private final Path dest;            // The file that was written
+        private final long nanos;           // Time the translation took, waiting for the open file limit included
+        private final IOException error;    // Why the translation failed, null if it succeeded
+
+        private Result(Path source, Path dest, long nanos, IOException error) {
+            this.source = source;
+            this.dest = dest;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        /**
+         * @return the file that was read
+         */
+        public Path source() {
+            return source;
+        }
+
+        /**
+         * @return the file that was written
+         */
+        public Path dest() {
+            return dest;
+        }
+
+        /**
+         * @return the time the translation took in nanoseconds
+         */
+        public long nanos() {
+            return nanos;
+        }
+
+        /**
+         * @return why the translation failed, or null if it succeeded
+         */
+        public IOException error() {
+            return error;
+        }
+
+        /**
+         * @return true if the file was translated
+         */
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets how files are translated and how many may be open at once
+     * @param fileTranslation translates one source file into one destination file, it must be safe to call from
+     *                        several threads at once
+     * @param maxOpenFiles most files open at once, at least 2 since every translation opens a source and a
+     *                     destination
+     */
+    public BatchTranslator(FileTranslation fileTranslation, int maxOpenFiles) {
+        if (maxOpenFiles < 2)
+            throw new IllegalArgumentException("A batch needs to open at least 2 files at once");
+        this.fileTranslation = fileTranslation;
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate every source file into the destination directory. Files are translated
+     * concurrently, and the listener hears about every file as soon as it is done, from the thread that
+     * translated it.
+     * @param sources a directory, whose .txt files are translated, or a glob of the files to translate
+     * @param destDir the directory the translations are written to, it is created if it doesn't exist
+     * @param listener called with the result of every file as soon as it is done
+     * @return the results of every file, in the order of the source paths
+     * @throws IOException if the sources can't be listed or the destination directory can't be created
+     */
+    public List<Result> translate(String sources, Path destDir, Consumer<Result> listener) throws IOException {
+        Path base = baseDirectory(sources);
+        List<Path> files = findSources(base, sources);
+        List<Future<Result>> futures = new ArrayList<>(files.size());
+        List<Result> results = new ArrayList<>(files.size());
+        Semaphore openFiles = new Semaphore(maxOpenFiles);     // A permit for every file that may be open
+        ExecutorService threads = VirtualThreads.newPerTaskExecutor(maxOpenFiles / 2);
+
+        Files.createDirectories(destDir);
+        try {
+            for (Path source : files) {
+                Path dest = destDir.resolve(base.relativize(source).toString());
+                futures.add(threads.submit(() -> {
+                    Result result = translateFile(source, dest, openFiles);
+                    listener.accept(result);
+                    return result;
+                }));
+            }
+            for (Future<Result> future : futures)
+                results.add(join(future));
+        } finally {
+            threads.shutdownNow();
+        }
+        return results;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate one file while holding permits for its source and its destination
+     * @return the outcome of the translation
+     */
+    private Result translateFile(Path source, Path dest, Semaphore openFiles) {
+        long start = System.nanoTime();
+
+        try {
+            openFiles.acquireUninterruptibly(2);
+            try {
+                if (Files.exists(dest) && Files.isSameFile(source, dest))
+                    throw new IOException("The source and destination are the same file");
+                Path parent = dest.getParent();
+                if (parent != null)
+                    Files.createDirectories(parent);
+                fileTranslation.translate(source, dest);
+            } finally {
+                openFiles.release(2);
+            }
+        } catch (IOException ioException) {
+            return new Result(source, dest, System.nanoTime() - start, ioException);
+        }
+        return new Result(source, dest, System.nanoTime() - start, null);
+    }
+
+    // *****************
+
+    /**
+     * This function will wait for a file to be translated. Errors thrown by the translation, rather than failed
+     * I/O, are passed on to the caller
+     */
+    private static Result join(Future<Result> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException executionException) {
+            Throwable cause = executionException.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the batch", interruptedException);
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the directory the sources are found in: the sources themselves if they name a directory, or else
+     * the directories of the glob up to the first name with a glob char in it
+     */
+    private static Path baseDirectory(String sources) {
+        int glob = firstGlobChar(sources);
+
+        if (glob < 0)
+            return Paths.get(sources);
+        int separator = Math.max(sources.lastIndexOf('/', glob), sources.lastIndexOf('\\', glob));
+        return Paths.get(separator < 0 ? "." : sources.substring(0, separator + 1));
+    }
+
+    // *****************
+
+    /**
+     * This function will list the files to translate, sorted by path so the batch always runs in the same order
+     * @param base the directory the sources are found in
+     * @param sources a directory or a glob
+     * @return the files to translate
+     * @throws IOException if the directory can't be listed
+     */
+    private static List<Path> findSources(Path base, String sources) throws IOException {
+        int glob = firstGlobChar(sources);
+        PathMatcher matcher;
+        int depth;
+
+        if (glob < 0) {                                     // Every .txt or .txt.gz file right in the directory
+            if (!Files.isDirectory(base))
+                throw new IOException(sources + " is not a directory");
+            matcher = FileSystems.getDefault().getPathMatcher("glob:*.{txt,txt.gz}");
+            depth = 1;
+        } else {                                            // Every file the rest of the glob matches
+            int separator = Math.max(sources.lastIndexOf('/', glob), sources.lastIndexOf('\\', glob));
+            String pattern = sources.substring(separator + 1);
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("[/\\\\]").length;
+        }
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(base.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the index of the first glob char of the sources, or -1 if they name a directory
+     */
+    private static int firstGlobChar(String sources) {
+        for (int i = 0; i < sources.length(); ++i) {
+            if (GLOB_CHARS.indexOf(sources.charAt(i)) >= 0)
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+}
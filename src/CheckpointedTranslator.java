@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Translates a file so that a run that crashes or is killed can be picked up where it left off. The translation is
+ * written chunk by chunk, and every CHECKPOINT_BYTES of source or CHECKPOINT_NANOS, whichever comes first, a
+ * checkpoint next to the destination, "dest.checkpoint", records how much of the source is translated and how long
+ * its translation is, once the destination is forced to disk. A run that finds a checkpoint for the same source and
+ * settings cuts the destination back to the length it recorded, dropping whatever was written after it, and goes
+ * on from there, so nothing is translated twice or written twice. The checkpoint is deleted once the translation
+ * is complete, and a stopped run loses at most the work since its last checkpoint.
+ * A chunk always ends after a non-empty line, so the empty lines before a cut are held back in the source with the
+ * rest of the next chunk, and the translation is the same as one made in a single run. A checkpoint is a few dozen
+ * bytes written after a sync of the destination, rare enough that it costs a small fraction of the run.
+ * Text is read and written in UTF-8, like the NIO engine. A checkpoint is only trusted while the source still has
+ * the size and modification time it recorded and the destination is at least as long as its translation.
+ */
+public class CheckpointedTranslator {
+    private static final int MAGIC = 0x504C434B;           // "PLCK", starts every checkpoint file
+    private static final int VERSION = 1;                  // Layout of the checkpoint file
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int CHECKPOINT_FILE_BYTES = 48;   // Magic, version, settings, source size, time, offsets
+    private static final int CHUNK_SIZE = 1 << 20;         // Bytes read from the source at once
+    private static final long CHECKPOINT_BYTES = 16L << 20;   // Source bytes translated between two checkpoints
+    private static final long CHECKPOINT_NANOS = 1_000_000_000L;   // Or time between two checkpoints, if sooner
+
+    private final SentenceTranslator sentenceTranslator;     // Translates one line of text without its newline
+    private final long settings;                             // Hash of the settings the translation depends on
+
+    // *****************
+
+    /**
+     * What a checkpointed translation did
+     */
+    public static final class Result {
+        private final long resumedFrom;         // Source bytes already translated by an earlier run
+        private final long bytes;               // Size of the source
+        private final int checkpoints;          // Checkpoints saved in this run
+
+        private Result(long resumedFrom, long bytes, int checkpoints) {
+            this.resumedFrom = resumedFrom;
+            this.bytes = bytes;
+            this.checkpoints = checkpoints;
+        }
+
+        /**
+         * @return the bytes of the source an earlier run had already translated, 0 if this run started over
+         */
+        public long resumedFrom() {
+            return resumedFrom;
+        }
+
+        /**
+         * @return the size of the source in bytes
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the number of checkpoints saved in this run
+         */
+        public int checkpoints() {
+            return checkpoints;
+        }
+
+        @Override
+        public String toString() {
+            return (resumedFrom == 0 ? "started from the beginning" : "resumed at byte " + resumedFrom + " of " +
+                    bytes) + ", " + checkpoints + " checkpoints saved";
+        }
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets how lines are translated
+     * @param sentenceTranslator translates one line of text without its newline
+     * @param settings everything else the translation depends on, such as the action and the dialect. A checkpoint
+     *                 saved with other settings is not used
+     */
+    public CheckpointedTranslator(SentenceTranslator sentenceTranslator, String settings) {
+        byte[] bytes = settings.getBytes(StandardCharsets.UTF_8);
+        this.sentenceTranslator = sentenceTranslator;
+        this.settings = IncrementalTranslator.hash(bytes, 0, bytes.length);
+    }
+
+    // *****************
+
+    /**
+     * @param dest a destination file
+     * @return the checkpoint file of the destination
+     */
+    public static Path checkpointOf(Path dest) {
+        return dest.resolveSibling(dest.getFileName() + ".checkpoint");
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the source file into the destination file, going on from the checkpoint of an
+     * earlier run that didn't finish if there is one that fits
+     * @param source the file to translate
+     * @param dest the file to write the translation to
+     * @return where the translation started and how many checkpoints it saved
+     * @throws IOException if reading or writing fails
+     */
+    public Result translate(Path source, Path dest) throws IOException {
+        Path file = checkpointOf(dest);
+        long size = Files.size(source);
+        long time = Files.getLastModifiedTime(source).toMillis();
+        long[] checkpoint = readCheckpoint(file, size, time, dest);
+        long input = checkpoint == null ? 0 : checkpoint[0];    // Source bytes translated so far
+        long output = checkpoint == null ? 0 : checkpoint[1];   // Bytes of their translation
+        long resumedFrom = input;
+        int checkpoints = 0;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            out.truncate(output);                         // Drop what was written after the checkpoint
+            out.position(output);
+            StringBuilder translation = new StringBuilder();
+            byte[] bytes = new byte[CHUNK_SIZE];          // Source bytes read and not translated yet
+            int length = 0;                               // Bytes used in bytes
+            long uncheckpointed = 0;                      // Source bytes translated since the last checkpoint
+            long checkpointTime = System.nanoTime();      // When the last checkpoint was saved
+            boolean ended = false;
+
+            while (!ended || length > 0) {
+                if (length == bytes.length)               // A chunk longer than the buffer, make room for the rest
+                    bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+                int read = ended ? -1 : in.read(ByteBuffer.wrap(bytes, length, bytes.length - length),
+                        input + length);
+                if (read < 0)
+                    ended = true;
+                else
+                    length += read;
+                int cut = ended ? length : cut(bytes, length);
+                if (cut <= 0)
+                    continue;
+
+                translation.setLength(0);
+                Translator.translate(new String(bytes, 0, cut, StandardCharsets.UTF_8), translation,
+                        sentenceTranslator);
+                ByteBuffer translated = ByteBuffer.wrap(translation.toString().getBytes(StandardCharsets.UTF_8));
+                while (translated.hasRemaining())
+                    output += out.write(translated);
+                input += cut;
+                length -= cut;
+                System.arraycopy(bytes, cut, bytes, 0, length);
+                uncheckpointed += cut;
+                if (!ended && (uncheckpointed >= CHECKPOINT_BYTES
+                        || System.nanoTime() - checkpointTime >= CHECKPOINT_NANOS)) {
+                    out.force(false);                     // The checkpoint must never count bytes not on disk
+                    writeCheckpoint(file, size, time, input, output);
+                    ++checkpoints;
+                    uncheckpointed = 0;
+                    checkpointTime = System.nanoTime();
+                }
+            }
+        }
+        Files.deleteIfExists(file);                       // Complete, the next run starts over
+        return new Result(resumedFrom, size, checkpoints);
+    }
+
+    // *****************
+
+    /**
+     * This function will find where the source bytes read can be cut into a chunk: after the line end of the last
+     * non-empty line. A "\r" at the end of the bytes might be the start of "\r\n", so it is not cut after yet
+     * @param bytes the source bytes read, starting at the start of a line
+     * @param length bytes used
+     * @return the length of the chunk, 0 if it can't be cut yet
+     */
+    static int cut(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; --i) {
+            byte b = bytes[i];
+            if (b != '\n' && b != '\r')
+                continue;
+            if (b == '\r' && (i + 1 == length || bytes[i + 1] == '\n'))
+                continue;                                 // Not sure it ends a line, or the '\n' after it does
+            int lineEnd = b == '\n' && i > 0 && bytes[i - 1] == '\r' ? i - 1 : i;
+            if (lineEnd > 0 && bytes[lineEnd - 1] != '\n' && bytes[lineEnd - 1] != '\r')
+                return i + 1;                             // The line before the line end is not empty
+        }
+        return 0;
+    }
+
+    // *****************
+
+    /**
+     * This function will read the checkpoint of an earlier run
+     * @param file the checkpoint file
+     * @param size the size of the source
+     * @param time the modification time of the source in milliseconds
+     * @param dest the destination the checkpoint belongs to
+     * @return the source bytes translated and the bytes of their translation, or null if there is no checkpoint
+     * or it doesn't match the source, the settings or the destination
+     * @throws IOException if the checkpoint can't be read
+     */
+    private long[] readCheckpoint(Path file, long size, long time, Path dest) throws IOException {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ORDER);
+        } catch (NoSuchFileException noSuchFileException) {   // No earlier run left one
+            return null;
+        }
+        if (bytes.limit() != CHECKPOINT_FILE_BYTES || bytes.getInt() != MAGIC || bytes.getInt() != VERSION
+                || bytes.getLong() != settings || bytes.getLong() != size || bytes.getLong() != time)
+            return null;
+        long input = bytes.getLong();
+        long output = bytes.getLong();
+        if (input < 0 || input > size || output < 0 || !Files.exists(dest) || Files.size(dest) < output)
+            return null;
+        return new long[] {input, output};
+    }
+
+    // *****************
+
+    /**
+     * This function will write a checkpoint and force it to disk before it is moved over the last one, so there
+     * is always one whole checkpoint to go back to
+     * @param file the checkpoint file
+     * @param size the size of the source
+     * @param time the modification time of the source in milliseconds
+     * @param input the source bytes translated
+     * @param output the bytes of their translation
+     * @throws IOException if the checkpoint can't be written
+     */
+    private void writeCheckpoint(Path file, long size, long time, long input, long output) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(CHECKPOINT_FILE_BYTES).order(ORDER);
+        bytes.putInt(MAGIC).putInt(VERSION).putLong(settings).putLong(size).putLong(time).putLong(input)
+                .putLong(output).flip();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+                channel.force(false);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException atomicMoveNotSupportedException) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // *****************
+}
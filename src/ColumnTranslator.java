@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Translates only some columns of delimited text, such as CSV or TSV, and copies every other field as it is. The
+ * text is streamed through in batches of whole records, so memory stays bounded however many rows there are.
+ * - Fields are split at the delimiter. In CSV a field can be quoted: it starts with '"', holds delimiters, line
+ *   ends and quotes written twice ("") as they are, and ends at the next single '"'. TSV has no quoting.
+ * - Only the fields of the chosen columns are looked at more closely. Everything between two of them (the other
+ *   fields, the delimiters and the line ends) is copied in one span without being parsed beyond finding where it
+ *   ends.
+ * - A chosen field is translated keeping its layout, so its words change and nothing else does. The translation
+ *   never adds a delimiter, a quote or a line end, so a field that didn't need quoting still doesn't.
+ * - Columns are picked by name, which makes the first record a header that is copied as it is, or by number
+ *   counting from 1, which translates every record.
+ * Records don't depend on each other, so with more than one thread every batch is split into pieces of records
+ * that are translated in parallel, and the batches are written back in the order they were read, a few in flight
+ * at a time, like ParallelTranslator does with lines.
+ */
+public class ColumnTranslator {
+    private static final int BATCH_CHARS = 1 << 18;    // Chars read into one batch before it is handed out
+    private static final int SPLIT_RECORDS = 256;      // Records of a piece of a batch translated on one thread
+
+    private final SentenceTranslator fieldTranslator;  // Translates a field keeping its layout
+    private final char delimiter;                      // Separates the fields of a record
+    private final boolean quoted;                      // Fields can be quoted with '"', as in CSV
+    private final List<String> columns;                // Names or numbers of the columns to translate
+    private final ForkJoinPool pool;                   // Threads that translate, null to translate on the caller's
+    private final int maxBatches;                      // Batches that may be in flight at once
+
+    // *****************
+
+    /**
+     * The constructor that sets the columns to translate and the format of the text
+     * @param fieldTranslator translates a field keeping its layout, such as WordTranslator::encodeKeepingLayout.
+     *                        It must be safe to call from several threads at once if parallelism is more than 1
+     * @param delimiter the char between two fields
+     * @param quoted true if fields can be quoted with '"', as in CSV, false if they can't, as in TSV
+     * @param columns the columns to translate, by header name or by number counting from 1
+     * @param parallelism the number of threads that translate
+     * @throws IllegalArgumentException if there are no columns, one of them is empty, a column number is less than
+     * 1, or parallelism is less than 1
+     */
+    public ColumnTranslator(SentenceTranslator fieldTranslator, char delimiter, boolean quoted, List<String> columns,
+                            int parallelism) {
+        if (columns.isEmpty())
+            throw new IllegalArgumentException("No columns to translate");
+        for (String column : columns) {
+            if (column.isEmpty())
+                throw new IllegalArgumentException("Empty column in \"" + String.join(",", columns) + "\"");
+            if (isNumber(column) && Integer.parseInt(column) < 1)
+                throw new IllegalArgumentException("Column numbers start at 1: " + column);
+        }
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        this.fieldTranslator = fieldTranslator;
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+        this.columns = List.copyOf(columns);
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.maxBatches = 2 * parallelism + 1;
+    }
+
+    // *****************
+
+    /**
+     * @param filename a file name
+     * @return true if the file is tab separated, by its ".tsv" or ".tsv.gz" extension. Any other file is taken to
+     * be comma separated
+     */
+    public static boolean isTabSeparated(String filename) {
+        return filename.endsWith(".tsv") || filename.endsWith(".tsv.gz");
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the chosen columns of every record from the reader into the writer. Neither of
+     * them is closed or flushed
+     * @param in the reader to take the records from
+     * @param out the writer to put the translated records into
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if a column name is not in the header, before anything is written
+     */
+    public void translate(Reader in, Writer out) throws IOException {
+        ArrayDeque<Batch> inFlight = new ArrayDeque<>();   // Batches in the order they were read
+        char[] block = new char[BATCH_CHARS];               // Text read and not handed out yet
+        int length = 0;                                     // Chars of the block filled
+        boolean ended = false;                              // The reader has no more text
+        boolean[] translated = null;                        // Columns to translate, known once a record is read
+
+        try {
+            while (true) {
+                while (!ended && length < block.length) {     // Fill the block
+                    int read = in.read(block, length, block.length - length);
+                    if (read < 0)
+                        ended = true;
+                    else
+                        length += read;
+                }
+                Batch batch = readBatch(block, length, ended);
+                if (batch == null && !ended) {                // A record longer than the block, make room for it
+                    block = Arrays.copyOf(block, 2 * block.length);
+                    continue;
+                }
+                if (batch == null)                            // The text has ended
+                    break;
+                System.arraycopy(block, batch.text.length(), block, 0, length - batch.text.length());
+                length -= batch.text.length();
+                if (translated == null) {                     // The first record tells the columns apart
+                    translated = resolveColumns(batch.text, batch.ends[0]);
+                    batch.header = columns.stream().anyMatch(column -> !isNumber(column));
+                }
+                batch.translated = translated;
+                if (pool == null) {                           // Translate it right here
+                    out.write(batch.compute());
+                    continue;
+                }
+                if (inFlight.size() == maxBatches)            // Write the oldest batch once it's done
+                    out.write(inFlight.remove().join());
+                inFlight.add(batch);
+                pool.execute(batch);
+            }
+            while (!inFlight.isEmpty())
+                out.write(inFlight.remove().join());
+        } finally {
+            for (Batch unfinished : inFlight)                 // Don't leave work behind if writing failed
+                unfinished.cancel(false);
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will stop the worker threads, if there are any
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    // *****************
+
+    /**
+     * This function will find where the whole records of the block end. A line end only ends a record outside of
+     * a quoted field
+     * @param block the text read
+     * @param length chars of the block filled
+     * @param ended true if the reader has no more text, so the last record ends with the text
+     * @return the whole records at the start of the block, or null if there is not a single one
+     */
+    private Batch readBatch(char[] block, int length, boolean ended) {
+        int[] ends = new int[64];                          // Index one past the line end of every record
+        int count = 0;                                     // Number of records found
+        int recordStart = 0;                               // Start of the record being read
+        boolean inQuotes = false;                          // Inside a quoted field
+
+        for (int i = 0; i < length; ++i) {
+            char c = block[i];
+            if (inQuotes) {
+                if (c != '"')
+                    continue;
+                if (i + 1 == length && !ended)             // Can't tell "" from the closing quote yet
+                    break;
+                if (i + 1 < length && block[i + 1] == '"')
+                    ++i;                                   // A quote written twice is part of the field
+                else
+                    inQuotes = false;
+            } else if (c == '"' && quoted && (i == recordStart || block[i - 1] == delimiter))
+                inQuotes = true;
+            else if (c == '\n') {
+                if (count == ends.length)
+                    ends = Arrays.copyOf(ends, 2 * count);
+                ends[count++] = i + 1;
+                recordStart = i + 1;
+            }
+        }
+        if (ended && recordStart < length) {               // The last record has no line end
+            if (count == ends.length)
+                ends = Arrays.copyOf(ends, count + 1);
+            ends[count++] = length;
+            recordStart = length;
+        }
+        return count == 0 ? null : new Batch(new String(block, 0, recordStart), ends, count);
+    }
+
+    // *****************
+
+    /**
+     * This function will turn the columns to translate into a flag for every column, reading the names from the
+     * first record if any column is picked by name
+     * @param text the text that holds the first record
+     * @param end index one past the line end of the first record
+     * @return true for every column to translate, by index counting from 0
+     * @throws IllegalArgumentException if a column name is not in the header
+     */
+    private boolean[] resolveColumns(String text, int end) {
+        List<String> header = new ArrayList<>();           // Names of the columns, only read if needed
+        boolean[] translated = new boolean[0];
+
+        if (columns.stream().anyMatch(column -> !isNumber(column))) {
+            int contentEnd = contentEnd(text, 0, end);
+            for (int fieldStart = 0; ; ) {
+                int[] field = field(text, fieldStart, contentEnd);
+                header.add(unquote(text, fieldStart, field[0]));
+                if (field[0] >= contentEnd)
+                    break;
+                fieldStart = field[0] + 1;
+            }
+        }
+        for (String column : columns) {
+            int index = isNumber(column) ? Integer.parseInt(column) - 1 : header.indexOf(column);
+            if (index < 0)
+                throw new IllegalArgumentException("No column named \"" + column + "\" in the header");
+            if (index >= translated.length)
+                translated = Arrays.copyOf(translated, index + 1);
+            translated[index] = true;
+        }
+        return translated;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the chosen fields of a record and copy everything else as it is, in one span
+     * from the end of a chosen field to the start of the next one
+     * @param text the text that holds the record
+     * @param start index of the first char of the record
+     * @param end index one past the line end of the record
+     * @param translated true for every column to translate
+     * @param out the buffer to append the translated record to
+     * @param field buffer for the unquoted text of a quoted field
+     * @param translation buffer for the translation of a quoted field
+     */
+    private void translateRecord(String text, int start, int end, boolean[] translated, StringBuilder out,
+                                 StringBuilder field, StringBuilder translation) {
+        int contentEnd = contentEnd(text, start, end);
+        int span = start;                                  // Start of the text not copied yet, copied as it is
+
+        for (int column = 0, fieldStart = start; column < translated.length; ++column) {
+            int[] bounds = field(text, fieldStart, contentEnd);
+            if (translated[column]) {
+                if (bounds[1] < 0) {                       // Translated where it is
+                    out.append(text, span, fieldStart);
+                    fieldTranslator.translate(text, fieldStart, bounds[0], out);
+                    span = bounds[0];
+                } else {                                   // Translated between its quotes
+                    out.append(text, span, fieldStart + 1);
+                    translateQuoted(text, fieldStart + 1, bounds[1], out, field, translation);
+                    span = bounds[1];
+                }
+            }
+            if (bounds[0] >= contentEnd)
+                break;
+            fieldStart = bounds[0] + 1;
+        }
+        out.append(text, span, end);
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the text inside the quotes of a field. Without a quote in it, it is translated
+     * where it is. Otherwise the quotes written twice are made single before it is translated and written twice
+     * again after
+     */
+    private void translateQuoted(String text, int start, int end, StringBuilder out, StringBuilder field,
+                                 StringBuilder translation) {
+        if (text.indexOf('"', start) >= end || text.indexOf('"', start) < 0) {
+            fieldTranslator.translate(text, start, end, out);
+            return;
+        }
+        field.setLength(0);
+        for (int i = start; i < end; ++i) {
+            field.append(text.charAt(i));
+            if (text.charAt(i) == '"')
+                ++i;                                       // Skip the second quote
+        }
+        translation.setLength(0);
+        fieldTranslator.translate(field, 0, field.length(), translation);
+        for (int i = 0; i < translation.length(); ++i) {
+            out.append(translation.charAt(i));
+            if (translation.charAt(i) == '"')
+                out.append('"');
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will find where a field ends
+     * @param text the text that holds the field
+     * @param start index of the first char of the field
+     * @param end index of the line end of the record
+     * @return the index of the delimiter after the field (or the line end), and the index of its closing quote,
+     * or -1 if it is not quoted
+     */
+    private int[] field(String text, int start, int end) {
+        int close = -1;                                    // Closing quote, if the field is quoted
+        int from = start;                                  // Where the delimiter after the field is searched from
+
+        if (quoted && start < end && text.charAt(start) == '"') {
+            close = start + 1;
+            while (close < end && (text.charAt(close) != '"' || (close + 1 < end && text.charAt(close + 1) == '"')))
+                close += text.charAt(close) == '"' ? 2 : 1;
+            close = Math.min(close, end);                  // No closing quote, the field runs to the line end
+            from = Math.min(close + 1, end);
+        }
+        int delimiterIndex = TokenScanner.indexOf(text, from, end, delimiter);
+        return new int[] {delimiterIndex < 0 ? end : delimiterIndex, close};
+    }
+
+    // *****************
+
+    /**
+     * @return the field without its quotes and with its quotes written twice made single, or the field as it is
+     * if it is not quoted
+     */
+    private String unquote(String text, int start, int end) {
+        if (!quoted || start == end || text.charAt(start) != '"')
+            return text.substring(start, end);
+        int close = text.charAt(end - 1) == '"' && end - 1 > start ? end - 1 : end;
+        return text.substring(start + 1, close).replace("\"\"", "\"");
+    }
+
+    // *****************
+
+    /**
+     * @return the index of the line end of the record, "\n" or "\r\n", or its end if it has none
+     */
+    private static int contentEnd(String text, int start, int end) {
+        if (end > start && text.charAt(end - 1) == '\n')
+            --end;
+        if (end > start && text.charAt(end - 1) == '\r')
+            --end;
+        return end;
+    }
+
+    // *****************
+
+    /**
+     * @return true if the column is picked by number
+     */
+    private static boolean isNumber(String column) {
+        return !column.isEmpty() && column.length() <= 9 && column.chars().allMatch(Character::isDigit);
+    }
+
+    // *****************
+
+    /**
+     * A batch of whole records that is translated by the pool, in pieces of records on several threads, and
+     * joined back into one block of text
+     */
+    private final class Batch extends RecursiveTask<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;            // The records, line ends included
+        private final int[] ends;             // Index one past the line end of every record
+        private final int count;              // Number of records in the batch
+        private boolean header;               // The first record is a header that is copied as it is
+        private boolean[] translated;         // True for every column to translate
+
+        Batch(String text, int[] ends, int count) {
+            this.text = text;
+            this.ends = ends;
+            this.count = count;
+        }
+
+        /**
+         * This function will translate the records, splitting them into pieces for the pool if there is one
+         * @return the translated records
+         */
+        @Override
+        protected String compute() {
+            int pieces = (count + SPLIT_RECORDS - 1) / SPLIT_RECORDS;
+            String[] translations = new String[pieces];
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(pieces);
+
+            for (int piece = 0; piece < pieces; ++piece) {
+                int first = piece * SPLIT_RECORDS;
+                int last = Math.min(count, first + SPLIT_RECORDS);
+                int index = piece;
+                tasks.add(ForkJoinTask.adapt(() -> translations[index] = translateRecords(first, last)));
+            }
+            if (pool == null || pieces == 1)
+                tasks.forEach(ForkJoinTask::invoke);
+            else
+                ForkJoinTask.invokeAll(tasks);
+            return pieces == 1 ? translations[0] : String.join("", translations);
+        }
+
+        /**
+         * @return the translation of the records from first up to last
+         */
+        private String translateRecords(int first, int last) {
+            StringBuilder out = new StringBuilder(ends[last - 1] - (first == 0 ? 0 : ends[first - 1]));
+            StringBuilder field = new StringBuilder();
+            StringBuilder translation = new StringBuilder();
+
+            for (int record = first; record < last; ++record) {
+                int start = record == 0 ? 0 : ends[record - 1];
+                if (record == 0 && header)
+                    out.append(text, start, ends[0]);
+                else
+                    translateRecord(text, start, ends[record], translated, out, field, translation);
+            }
+            return out.toString();
+        }
+    }
+
+    // *****************
+}
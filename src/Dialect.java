@@ -0,0 +1,164 @@
+/**
+ * The rules of a Pig Latin dialect: which letters are vowels, what goes between the word and the moved consonants,
+ * the suffix added after moved consonants, the suffix added to words that start with a vowel, and whether "qu" moves
+ * as one consonant cluster.
+ * The rules are compiled once into a table of char classes and plain char arrays, so translating in any dialect
+ * costs the same per char as the hard-coded rules did.
+ * Dialects are immutable and can be shared by any number of threads.
+ */
+public final class Dialect {
+    static final byte SYMBOL = 1;      // Printable ASCII symbol or number, never part of the core of a word
+    static final byte VOWEL = 2;       // Vowel of the dialect
+    static final byte Y = 4;           // "y" or "Y", stays in the word when it ends a cluster
+    static final byte Q = 8;           // "q" or "Q", starts a "qu" cluster
+    static final byte U = 16;          // "u" or "U", ends a "qu" cluster
+
+    /** The rules this translator has always used: "pig" becomes "ig-pay" and "apple" becomes "apple-ay" */
+    public static final Dialect STANDARD = new Dialect("aeiouAEIOU", "-", "ay", "ay", false);
+
+    private final byte[] classes;            // classes[c] holds the class bits of the char c
+    private final char[] separator;          // Goes between the word and the moved consonants
+    private final char[] consonantSuffix;    // Ends a word that had consonants moved
+    private final char[] vowelSuffix;        // Ends a word that starts with a vowel
+    private final boolean keepQu;            // "qu" moves as one cluster, so "queen" becomes "een-quay"
+
+    // *****************
+
+    /**
+     * The constructor that compiles the rules into lookup tables
+     * @param vowels the chars that are vowels
+     * @param separator goes between the word and the moved consonants, may be empty
+     * @param consonantSuffix ends a word that had consonants moved
+     * @param vowelSuffix ends a word that starts with a vowel
+     * @param keepQu true if "qu" moves as one cluster
+     */
+    public Dialect(String vowels, String separator, String consonantSuffix, String vowelSuffix, boolean keepQu) {
+        int size = 128;                                  // ASCII, or up to the biggest vowel if that is bigger
+        for (int i = 0; i < vowels.length(); ++i)
+            size = Math.max(size, vowels.charAt(i) + 1);
+        this.classes = new byte[size];
+        for (char character = 0; character < 128; ++character) {
+            if ((character >= 33 && character <= 64) || (character >= 91 && character <= 96)
+                    || (character >= 123 && character <= 126))
+                classes[character] |= SYMBOL;
+        }
+        for (int i = 0; i < vowels.length(); ++i)
+            classes[vowels.charAt(i)] |= VOWEL;
+        classes['y'] |= Y;
+        classes['Y'] |= Y;
+        classes['q'] |= Q;
+        classes['Q'] |= Q;
+        classes['u'] |= U;
+        classes['U'] |= U;
+        this.separator = separator.toCharArray();
+        this.consonantSuffix = consonantSuffix.toCharArray();
+        this.vowelSuffix = vowelSuffix.toCharArray();
+        this.keepQu = keepQu;
+    }
+
+    // *****************
+
+    /**
+     * This function will build a dialect from a comma separated list of rule names, applied on top of the standard
+     * rules: "standard", "way" and "yay" (suffix for words starting with a vowel), "nohyphen" (nothing between the
+     * word and the moved consonants) and "qu" (keep "qu" together).
+     * @param names the rule names, e.g. "way,nohyphen"
+     * @return the compiled dialect
+     * @throws IllegalArgumentException if a rule name is unknown
+     */
+    public static Dialect parse(String names) {
+        String separator = "-";
+        String vowelSuffix = "ay";
+        boolean keepQu = false;
+
+        for (String name : names.split(",")) {
+            switch (name.trim()) {
+                case "standard":
+                    break;
+                case "way":
+                    vowelSuffix = "way";
+                    break;
+                case "yay":
+                    vowelSuffix = "yay";
+                    break;
+                case "nohyphen":
+                    separator = "";
+                    break;
+                case "qu":
+                    keepQu = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown dialect rule \"" + name.trim() + "\"");
+            }
+        }
+        return new Dialect("aeiouAEIOU", separator, "ay", vowelSuffix, keepQu);
+    }
+
+    // *****************
+
+    /**
+     * @param character the char to look up
+     * @return the class bits of the char, chars outside of the table are plain letters
+     */
+    int classOf(char character) {
+        return character < classes.length ? classes[character] : 0;
+    }
+
+    // *****************
+
+    /**
+     * @param character the char to check
+     * @return true if the char is a vowel of the dialect
+     */
+    boolean isVowel(char character) {
+        return (classOf(character) & VOWEL) != 0;
+    }
+
+    // *****************
+
+    /**
+     * @param character the char to check
+     * @return true if the char is a printable ASCII symbol or number
+     */
+    boolean isSymbol(char character) {
+        return (classOf(character) & SYMBOL) != 0;
+    }
+
+    // *****************
+
+    /**
+     * @return the chars that go between the word and the moved consonants
+     */
+    char[] separator() {
+        return separator;
+    }
+
+    // *****************
+
+    /**
+     * @return the chars that end a word that had consonants moved
+     */
+    char[] consonantSuffix() {
+        return consonantSuffix;
+    }
+
+    // *****************
+
+    /**
+     * @return the chars that end a word that starts with a vowel
+     */
+    char[] vowelSuffix() {
+        return vowelSuffix;
+    }
+
+    // *****************
+
+    /**
+     * @return true if "qu" moves as one cluster
+     */
+    boolean keepsQu() {
+        return keepQu;
+    }
+
+    // *****************
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a growing file, such as a log, like "tail -f": the lines already in the source are translated into the
+ * destination, and then every line appended to the source is translated and appended to the destination as soon
+ * as it is complete. A line is complete once its line end is written, so a line still being written is held back.
+ * The thread sleeps in a WatchService, which the file system wakes up when the directory of the source changes, so
+ * new lines are translated within milliseconds and nothing runs while the source is idle. The source is also
+ * checked every pollMillis in case no event comes, which is all there is on file systems a WatchService can't
+ * watch.
+ * Lines are cut into chunks the way CheckpointedTranslator cuts them, after a non-empty line, so empty lines are
+ * only written once a non-empty line follows them and the destination is always the translation of the complete
+ * lines so far. If the source is truncated or replaced by another file, as log rotation does, following starts
+ * over at the beginning of the new source and goes on appending to the destination.
+ * Text is read and written in UTF-8, like the NIO engine. A FollowTranslator keeps buffers between calls, so it
+ * must not be shared by threads that follow at the same time.
+ */
+public class FollowTranslator {
+    private static final int BUFFER_SIZE = 1 << 16;        // Bytes read from the source at once
+
+    private final SentenceTranslator sentenceTranslator;     // Translates one line of text without its newline
+    private final long pollMillis;                           // Most time between two checks of the source
+    private final StringBuilder translation;                 // Translation of a chunk, reused for every chunk
+    private byte[] staged;                                   // Source bytes read and not translated yet
+    private int stagedLength;                                // Bytes used in staged
+    private long position;                                   // Offset of the first staged byte in the source
+    private Object fileKey;                                  // Identity of the source followed, null if unknown
+
+    // *****************
+
+    /**
+     * The constructor that sets up the reusable buffers of the translator
+     * @param sentenceTranslator translates one line of text without its newline
+     * @param pollMillis the most milliseconds between two checks of the source when no event comes
+     */
+    public FollowTranslator(SentenceTranslator sentenceTranslator, long pollMillis) {
+        if (pollMillis < 1)
+            throw new IllegalArgumentException("The poll interval must be at least 1 ms: " + pollMillis);
+        this.sentenceTranslator = sentenceTranslator;
+        this.pollMillis = pollMillis;
+        this.translation = new StringBuilder();
+        this.staged = new byte[BUFFER_SIZE];
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the source into the destination and then go on translating what is appended
+     * to the source, until the thread is interrupted. The destination is written over
+     * @param source the file to follow
+     * @param dest the file to write the translation to
+     * @throws IOException if reading or writing fails
+     * @throws InterruptedException once the thread is interrupted, which is how following stops
+     */
+    public void follow(Path source, Path dest) throws IOException, InterruptedException {
+        Path directory = source.toAbsolutePath().getParent();
+        Path name = source.getFileName();
+        WatchService watcher = null;                       // Null if the directory can't be watched
+
+        stagedLength = 0;
+        position = 0;
+        fileKey = null;
+        try (FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            try {
+                watcher = directory.getFileSystem().newWatchService();
+                directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException | UnsupportedOperationException watchException) {   // Poll only
+                if (watcher != null)
+                    watcher.close();
+                watcher = null;
+            }
+            boolean changed = true;                        // Check the source, it might have grown
+            while (true) {
+                if (changed)
+                    translateAppended(source, out);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                changed = watcher == null ? sleep() : await(watcher, name);
+            }
+        } finally {
+            if (watcher != null)
+                watcher.close();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will wait for the polling interval
+     * @return true, the source is checked after every interval
+     */
+    private boolean sleep() throws InterruptedException {
+        Thread.sleep(pollMillis);
+        return true;
+    }
+
+    // *****************
+
+    /**
+     * This function will wait for the directory of the source to change, or for the polling interval to pass
+     * @param watcher the watch service of the directory
+     * @param name the name of the source in its directory
+     * @return true if the source might have changed: an event named it, events were lost, or none came in time
+     */
+    private boolean await(WatchService watcher, Path name) throws InterruptedException {
+        WatchKey key;
+        try {
+            key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+        } catch (ClosedWatchServiceException closedWatchServiceException) {
+            throw new InterruptedException("The watch service was closed");
+        }
+        if (key == null)                                   // No event in time, check anyway
+            return true;
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context()))
+                changed = true;
+        }
+        key.reset();
+        return changed;
+    }
+
+    // *****************
+
+    /**
+     * This function will read what was appended to the source since the last call and translate and write every
+     * complete line of it. If the source is now shorter or another file, it is read again from the beginning
+     * @param source the file to follow
+     * @param out the destination
+     * @throws IOException if reading or writing fails
+     */
+    private void translateAppended(Path source, FileChannel out) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        } catch (NoSuchFileException noSuchFileException) {   // Moved away, wait for the next one
+            return;
+        }
+        long read = position + stagedLength;              // Bytes of the source read so far
+        if (attributes.size() < read || fileKey != null && !Objects.equals(fileKey, attributes.fileKey())) {
+            position = 0;                                 // Truncated or replaced, start over with the new file
+            stagedLength = 0;
+            read = 0;
+        }
+        fileKey = attributes.fileKey();
+        if (attributes.size() == read)                    // Nothing new
+            return;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            while (true) {
+                if (stagedLength == staged.length)        // A line longer than the buffer, make room for the rest
+                    staged = Arrays.copyOf(staged, 2 * staged.length);
+                int count = in.read(ByteBuffer.wrap(staged, stagedLength, staged.length - stagedLength),
+                        position + stagedLength);
+                if (count <= 0)
+                    return;
+                stagedLength += count;
+                int cut = CheckpointedTranslator.cut(staged, stagedLength);
+                if (cut == 0)
+                    continue;
+                translation.setLength(0);
+                Translator.translate(new String(staged, 0, cut, StandardCharsets.UTF_8), translation,
+                        sentenceTranslator);
+                ByteBuffer translated = ByteBuffer.wrap(translation.toString().getBytes(StandardCharsets.UTF_8));
+                while (translated.hasRemaining())
+                    out.write(translated);
+                stagedLength -= cut;
+                System.arraycopy(staged, cut, staged, 0, stagedLength);
+                position += cut;
+            }
+        }
+    }
+
+    // *****************
+}
@@ -0,0 +1,334 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams gzip-compressed files through the translation without unpacking them to disk. Decompressing and
+ * compressing run on their own threads: one inflates the source ahead of the translation and one deflates the
+ * translation behind it, handing whole chunks over through small bounded queues, so the three stages overlap
+ * instead of taking turns on one thread, and only a few chunks are ever held in memory.
+ * Errors of a background thread, such as a source that is not in gzip format, are thrown by the next read, write
+ * or close of the stream.
+ */
+public final class GzipPipeline {
+    private static final int CHUNK_SIZE = 1 << 18;         // Bytes handed from one stage to the next at once
+    private static final int CHUNKS = 4;                   // Chunks going back and forth between two stages
+    private static final int ZIP_BUFFER_SIZE = 1 << 16;    // Compressed bytes inflated or deflated at once
+
+    // *****************
+
+    private GzipPipeline() {
+    }
+
+    // *****************
+
+    /**
+     * @param filename a file name
+     * @return true if the file is gzip-compressed, by its ".gz" extension
+     */
+    public static boolean isCompressed(String filename) {
+        return filename.endsWith(".gz");
+    }
+
+    // *****************
+
+    /**
+     * This function will decompress a gzip stream on a background thread, ahead of whoever reads the stream it
+     * returns. Closing the returned stream closes the compressed stream
+     * @param compressed the gzip-compressed bytes
+     * @return the decompressed bytes
+     */
+    public static InputStream decompress(InputStream compressed) {
+        return new InflatingInputStream(compressed);
+    }
+
+    // *****************
+
+    /**
+     * This function will compress what is written to the returned stream on a background thread. Closing the
+     * returned stream finishes the gzip stream and closes the compressed stream
+     * @param compressed where the gzip-compressed bytes go
+     * @return the stream to write the bytes to compress to
+     */
+    public static OutputStream compress(OutputStream compressed) {
+        return new DeflatingOutputStream(compressed);
+    }
+
+    // *****************
+
+    /**
+     * Bytes handed from one stage to the next
+     */
+    private static final class Chunk {
+        static final Chunk END = new Chunk();   // Comes after the last chunk
+
+        final byte[] bytes = new byte[CHUNK_SIZE];
+        int length;                             // Bytes filled
+    }
+
+    // *****************
+
+    /**
+     * The two queues between a stage and the next one, and why the background thread failed. Every chunk is in
+     * one of the queues or held by one of the two threads, so putting a chunk back never blocks for long
+     */
+    private static class Handoff {
+        final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(CHUNKS + 1);  // For the next stage, then END
+        final BlockingQueue<Chunk> empty = new ArrayBlockingQueue<>(CHUNKS);     // To be filled again
+        volatile Throwable error;               // Why the background thread failed, null if it didn't
+
+        Handoff() {
+            for (int i = 0; i < CHUNKS; ++i)
+                empty.add(new Chunk());
+        }
+
+        /**
+         * This function will throw the error of the background thread, if it failed
+         * @throws IOException the error, wrapped if it is not an IOException
+         */
+        void checkError() throws IOException {
+            Throwable cause = error;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause != null)
+                throw new IOException(cause);
+        }
+
+        /**
+         * @return the next chunk from the queue, waiting for it
+         * @throws InterruptedIOException if the waiting thread is interrupted
+         */
+        static Chunk take(BlockingQueue<Chunk> queue) throws InterruptedIOException {
+            try {
+                return queue.take();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the gzip thread");
+            }
+        }
+    }
+
+    // *****************
+
+    /**
+     * Reads the chunks a background thread inflates
+     */
+    private static final class InflatingInputStream extends InputStream {
+        private final Handoff handoff = new Handoff();
+        private final InputStream compressed;   // The gzip-compressed source
+        private final Thread inflater;          // Fills chunks with decompressed bytes
+        private Chunk chunk;                    // The chunk being read, null before the first one
+        private int position;                   // Next byte of the chunk to read
+        private boolean ended;                  // The last chunk was read
+
+        InflatingInputStream(InputStream compressed) {
+            this.compressed = compressed;
+            this.inflater = new Thread(this::inflate, "gzip-inflater");
+            inflater.setDaemon(true);
+            inflater.start();
+        }
+
+        /**
+         * This function will run on the background thread and inflate the source into chunks until it ends
+         */
+        private void inflate() {
+            try (InputStream in = new GZIPInputStream(compressed, ZIP_BUFFER_SIZE)) {
+                int read = 0;
+                while (read >= 0) {
+                    Chunk chunk = handoff.empty.take();
+                    chunk.length = 0;
+                    while (chunk.length < CHUNK_SIZE
+                            && (read = in.read(chunk.bytes, chunk.length, CHUNK_SIZE - chunk.length)) >= 0)
+                        chunk.length += read;
+                    handoff.full.put(chunk);
+                }
+            } catch (InterruptedException interruptedException) {   // The reader closed the stream
+                return;
+            } catch (Throwable throwable) {
+                handoff.error = throwable;
+            }
+            handoff.full.add(Chunk.END);
+        }
+
+        /**
+         * @return false if there are no more bytes
+         */
+        private boolean nextChunk() throws IOException {
+            while (!ended) {
+                if (chunk != null)
+                    handoff.empty.add(chunk);
+                chunk = Handoff.take(handoff.full);
+                position = 0;
+                if (chunk == Chunk.END) {
+                    chunk = null;
+                    ended = true;
+                    handoff.checkError();
+                } else if (chunk.length > 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if ((chunk == null || position == chunk.length) && !nextChunk())
+                return -1;
+            return chunk.bytes[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0)
+                return 0;
+            if ((chunk == null || position == chunk.length) && !nextChunk())
+                return -1;
+            int read = Math.min(count, chunk.length - position);
+            System.arraycopy(chunk.bytes, position, bytes, offset, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return chunk == null ? 0 : chunk.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.interrupt();                          // Stop inflating bytes nobody will read
+            try {
+                inflater.join();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            compressed.close();
+        }
+    }
+
+    // *****************
+
+    /**
+     * Collects bytes into chunks that a background thread deflates
+     */
+    private static final class DeflatingOutputStream extends FilterOutputStream {
+        private final Handoff handoff = new Handoff();
+        private final Thread deflater;          // Compresses full chunks into the destination
+        private Chunk chunk;                    // The chunk being filled
+        private boolean closed;
+
+        DeflatingOutputStream(OutputStream compressed) {
+            super(compressed);
+            this.chunk = handoff.empty.remove();
+            this.chunk.length = 0;
+            this.deflater = new Thread(this::deflate, "gzip-deflater");
+            deflater.setDaemon(true);
+            deflater.start();
+        }
+
+        /**
+         * This function will run on the background thread and deflate chunks until the last one. Once it fails it
+         * goes on taking chunks without deflating them, so the writer never waits for it forever
+         */
+        private void deflate() {
+            GZIPOutputStream gzip = null;
+            try {
+                for (Chunk chunk; (chunk = handoff.full.take()) != Chunk.END; ) {
+                    try {
+                        if (handoff.error == null) {
+                            if (gzip == null)
+                                gzip = new GZIPOutputStream(out, ZIP_BUFFER_SIZE);
+                            gzip.write(chunk.bytes, 0, chunk.length);
+                        }
+                    } catch (Throwable throwable) {
+                        handoff.error = throwable;
+                    }
+                    handoff.empty.put(chunk);
+                }
+                if (handoff.error == null) {
+                    if (gzip == null)                     // Nothing was written, still a valid gzip file
+                        gzip = new GZIPOutputStream(out, ZIP_BUFFER_SIZE);
+                    gzip.finish();
+                }
+            } catch (Throwable throwable) {
+                if (handoff.error == null)
+                    handoff.error = throwable;
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException ioException) {
+                    if (handoff.error == null)
+                        handoff.error = ioException;
+                }
+            }
+        }
+
+        /**
+         * This function will hand the chunk over to the deflater and take an empty one
+         */
+        private void handOver() throws IOException {
+            handoff.checkError();
+            try {
+                handoff.full.put(chunk);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the gzip thread");
+            }
+            chunk = Handoff.take(handoff.empty);
+            chunk.length = 0;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            if (chunk.length == CHUNK_SIZE)
+                handOver();
+            chunk.bytes[chunk.length++] = (byte) value;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (chunk.length == CHUNK_SIZE)
+                    handOver();
+                int copied = Math.min(count, CHUNK_SIZE - chunk.length);
+                System.arraycopy(bytes, offset, chunk.bytes, chunk.length, copied);
+                chunk.length += copied;
+                offset += copied;
+                count -= copied;
+            }
+        }
+
+        /**
+         * Bytes are only compressed a whole chunk at a time, so flushing hands nothing over: a gzip file can't be
+         * read before it is finished anyway
+         */
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                if (chunk.length > 0)
+                    handoff.full.put(chunk);
+                handoff.full.put(Chunk.END);
+                deflater.join();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                deflater.interrupt();
+                throw new InterruptedIOException("Interrupted while finishing the gzip file");
+            }
+            handoff.checkError();
+        }
+    }
+
+    // *****************
+}
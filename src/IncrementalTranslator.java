@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates a file again after small edits by translating only the parts that changed. The source is cut into
+ * blocks of lines, and a sidecar index next to the destination, "dest.index", keeps a hash of every block and the
+ * length of its translation. On the next run every block whose hash is in the index has its translation copied
+ * from the old destination with FileChannel.transferTo, and only the new blocks are translated, so the translation
+ * work follows the size of the edit instead of the size of the file. The source is still read and hashed in full,
+ * which is many times faster than translating it.
+ * Blocks end at line ends chosen by the content of the lines (a line whose hash ends in enough zero bits), not by
+ * their position, so inserting or deleting a line only changes the blocks around it and every later block is still
+ * found in the index. A block always ends with a non-empty line, which makes its translation the same wherever it
+ * is in the file: empty lines are only written once a non-empty line follows them.
+ * The new destination is written next to the old one and moved over it once it is complete, and the index is only
+ * trusted if the destination still has the size and modification time it recorded, so an interrupted run or an
+ * edited destination leads to a full translation instead of a wrong one.
+ * Text is read and written in UTF-8, like the NIO engine. An IncrementalTranslator keeps buffers between calls, so
+ * it must not be shared by threads that translate at the same time.
+ */
+public class IncrementalTranslator {
+    private static final int MAGIC = 0x504C4958;           // "PLIX", starts every index file
+    private static final int VERSION = 1;                  // Layout of the index file and of the blocks
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int HEADER_BYTES = 36;            // Magic, version, settings, destination size, time, blocks
+    private static final int ENTRY_BYTES = 16;             // Hash, source length and translation length of a block
+    private static final int MIN_BLOCK = 2 << 10;          // Bytes a block has before a line can end it
+    private static final int MAX_BLOCK = 64 << 10;         // Bytes after which the next non-empty line ends a block
+    private static final long BOUNDARY_MASK = 63;          // A line ends a block if these bits of its hash are zero
+    private static final long LAST_BLOCK = 0x4C415354L;    // Mixed into the hash of the block that ends the file
+    private static final int BUFFER_SIZE = 1 << 16;        // Bytes read from the source at once
+    private static final int OUTPUT_SIZE = 1 << 18;        // Translated bytes collected before each write
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);                      // Reads 8 bytes of an array as a long
+
+    private final SentenceTranslator sentenceTranslator;     // Translates one line of text without its newline
+    private final long settings;                             // Hash of the settings the translation depends on
+    private final StringBuilder translation;                 // Translation of a block, reused for every block
+    private final ByteBuffer output;                         // Translated bytes waiting to be written
+    private byte[] staged;                                   // Source bytes read, starting with an unfinished block
+    private int stagedLength;                                // Bytes used in staged
+    private Index old;                                       // Index of the last translation, null if there is none
+    private Map<Long, Integer> oldBlocks;                    // Block of the old index for every hash
+    private Index next;                                      // Index of the translation being written
+    private FileChannel oldDest;                             // The last translation, null if there is none
+    private FileChannel out;                                 // The new translation
+    private long copyStart;                                  // Start of the old translation waiting to be copied
+    private long copyLength;                                 // Length of the old translation waiting to be copied
+    private int translatedBlocks;                            // Blocks translated in this run
+    private long translatedBytes;                            // Source bytes translated in this run
+
+    // *****************
+
+    /**
+     * What an incremental translation did
+     */
+    public static final class Result {
+        private final int blocks;               // Blocks the source was cut into
+        private final int translatedBlocks;     // Blocks that had to be translated
+        private final long bytes;               // Size of the source
+        private final long translatedBytes;     // Source bytes that had to be translated
+
+        private Result(int blocks, int translatedBlocks, long bytes, long translatedBytes) {
+            this.blocks = blocks;
+            this.translatedBlocks = translatedBlocks;
+            this.bytes = bytes;
+            this.translatedBytes = translatedBytes;
+        }
+
+        /**
+         * @return the number of blocks the source was cut into
+         */
+        public int blocks() {
+            return blocks;
+        }
+
+        /**
+         * @return the number of blocks that had to be translated, the others were copied
+         */
+        public int translatedBlocks() {
+            return translatedBlocks;
+        }
+
+        /**
+         * @return the size of the source in bytes
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the bytes of the source that had to be translated
+         */
+        public long translatedBytes() {
+            return translatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "translated " + translatedBlocks + " of " + blocks + " blocks (" + translatedBytes + " of " +
+                    bytes + " bytes)";
+        }
+    }
+
+    // *****************
+
+    /**
+     * The hash, source length and translation length of every block of a translation, in the order of the blocks
+     */
+    private static final class Index {
+        long settings;                          // Hash of the settings the translation was made with
+        long destSize;                          // Size of the destination once it was written
+        long destTime;                          // Modification time of the destination in milliseconds
+        int blocks;                             // Number of blocks
+        long[] hashes = new long[64];           // Hash of every block
+        int[] lengths = new int[64];            // Source bytes of every block
+        int[] translationLengths = new int[64]; // Translated bytes of every block
+        long[] offsets;                         // Where the translation of every block starts, once read
+
+        void add(long hash, int length, int translationLength) {
+            if (blocks == hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * blocks);
+                lengths = Arrays.copyOf(lengths, 2 * blocks);
+                translationLengths = Arrays.copyOf(translationLengths, 2 * blocks);
+            }
+            hashes[blocks] = hash;
+            lengths[blocks] = length;
+            translationLengths[blocks] = translationLength;
+            ++blocks;
+        }
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets up the reusable buffers of the translator
+     * @param sentenceTranslator translates one line of text without its newline
+     * @param settings everything else the translation depends on, such as the action and the dialect. An index
+     *                 made with other settings is not used
+     */
+    public IncrementalTranslator(SentenceTranslator sentenceTranslator, String settings) {
+        byte[] bytes = settings.getBytes(StandardCharsets.UTF_8);
+        this.sentenceTranslator = sentenceTranslator;
+        this.settings = hash(bytes, 0, bytes.length);
+        this.translation = new StringBuilder();
+        this.output = ByteBuffer.allocate(OUTPUT_SIZE);
+        this.staged = new byte[BUFFER_SIZE];
+    }
+
+    // *****************
+
+    /**
+     * @param dest a destination file
+     * @return the sidecar index of the destination
+     */
+    public static Path indexOf(Path dest) {
+        return dest.resolveSibling(dest.getFileName() + ".index");
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the source file into the destination file, reusing the translation already in
+     * the destination for every block of the source that didn't change since its index was written
+     * @param source the file to translate
+     * @param dest the file to write the translation to
+     * @return how much had to be translated
+     * @throws IOException if reading or writing fails
+     */
+    public Result translate(Path source, Path dest) throws IOException {
+        Path index = indexOf(dest);
+        Path temporary = null;
+
+        old = readIndex(index, dest);
+        oldBlocks = new HashMap<>();
+        if (old != null) {
+            for (int block = old.blocks - 1; block >= 0; --block)
+                oldBlocks.put(old.hashes[block], block);
+        }
+        next = new Index();
+        next.settings = settings;
+        stagedLength = 0;
+        output.clear();
+        copyLength = 0;
+        translatedBlocks = 0;
+        translatedBytes = 0;
+        long bytes;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            temporary = temporaryOf(dest);
+            try (FileChannel oldDest = old == null ? null : FileChannel.open(dest, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                this.oldDest = oldDest;
+                this.out = out;
+                bytes = readBlocks(in);
+                copy();
+                flush();
+            }
+            Files.deleteIfExists(index);                  // Never leave an index next to a translation it doesn't fit
+            move(temporary, dest);
+            temporary = null;
+            next.destSize = Files.size(dest);
+            next.destTime = Files.getLastModifiedTime(dest).toMillis();
+            writeIndex(index);
+        } finally {
+            this.oldDest = null;
+            this.out = null;
+            old = null;
+            oldBlocks = null;
+            if (temporary != null)
+                Files.deleteIfExists(temporary);
+        }
+        return new Result(next.blocks, translatedBlocks, bytes, translatedBytes);
+    }
+
+    // *****************
+
+    /**
+     * This function will read the source and cut it into blocks. A block ends after a non-empty line once it has
+     * MIN_BLOCK bytes and the hash of the line picks it, or once it has MAX_BLOCK bytes. "\r\n" is never cut in
+     * two
+     * @param in the source
+     * @return the size of the source
+     * @throws IOException if reading or writing fails
+     */
+    private long readBlocks(FileChannel in) throws IOException {
+        long bytes = 0;
+        int blockStart = 0;                               // Start of the block being cut
+        int lineStart = 0;                                // Start of the line being looked at
+        boolean endOfInput = false;
+
+        while (!endOfInput) {
+            if (blockStart > 0) {                         // Move the unfinished block to the front
+                stagedLength -= blockStart;
+                System.arraycopy(staged, blockStart, staged, 0, stagedLength);
+                lineStart -= blockStart;
+                blockStart = 0;
+            }
+            if (stagedLength == staged.length)            // A block longer than the buffer, make room for the rest
+                staged = Arrays.copyOf(staged, 2 * staged.length);
+            int read = in.read(ByteBuffer.wrap(staged, stagedLength, staged.length - stagedLength));
+            if (read < 0)
+                endOfInput = true;
+            else {
+                stagedLength += read;
+                bytes += read;
+            }
+
+            int end;                                      // Index of the line end
+            while ((end = TokenScanner.indexOfLineEnd(staged, lineStart, stagedLength)) >= 0) {
+                int nextLine = end + 1;
+                if (staged[end] == '\r') {                // "\r\n" ends a single line
+                    if (nextLine == stagedLength && !endOfInput)
+                        break;                            // Wait for the byte after it
+                    if (nextLine < stagedLength && staged[nextLine] == '\n')
+                        ++nextLine;
+                }
+                int length = nextLine - blockStart;
+                if (end > lineStart && (length >= MAX_BLOCK || length >= MIN_BLOCK
+                        && (hash(staged, lineStart, end) & BOUNDARY_MASK) == 0)) {
+                    endBlock(blockStart, nextLine, false);
+                    blockStart = nextLine;
+                }
+                lineStart = nextLine;
+            }
+        }
+        if (blockStart < stagedLength)                    // The rest of the file, maybe with empty lines at the end
+            endBlock(blockStart, stagedLength, true);
+        return bytes;
+    }
+
+    // *****************
+
+    /**
+     * This function will find the translation of a block in the old index or translate it, and add it to the new
+     * translation
+     * @param start index of the first byte of the block
+     * @param end index one past the last byte of the block
+     * @param last true if the block ends the file, where empty lines at the end are dropped
+     * @throws IOException if writing fails
+     */
+    private void endBlock(int start, int end, boolean last) throws IOException {
+        long hash = hash(staged, start, end) ^ (last ? LAST_BLOCK : 0);
+        Integer block = oldBlocks.get(hash);
+
+        if (block != null && old.lengths[block] == end - start) {   // Unchanged, copy the old translation
+            long offset = old.offsets[block];
+            int length = old.translationLengths[block];
+            if (copyLength > 0 && copyStart + copyLength != offset)
+                copy();
+            if (copyLength == 0)
+                copyStart = offset;
+            copyLength += length;
+            next.add(hash, end - start, length);
+            return;
+        }
+        copy();
+        translation.setLength(0);
+        Translator.translate(new String(staged, start, end - start, StandardCharsets.UTF_8), translation,
+                sentenceTranslator);
+        byte[] translated = translation.toString().getBytes(StandardCharsets.UTF_8);
+        write(translated);
+        next.add(hash, end - start, translated.length);
+        ++translatedBlocks;
+        translatedBytes += end - start;
+    }
+
+    // *****************
+
+    /**
+     * This function will copy the old translation waiting to be copied into the new one, in the kernel when it can
+     * @throws IOException if reading or writing fails
+     */
+    private void copy() throws IOException {
+        if (copyLength == 0)
+            return;
+        flush();
+        for (long copied = 0; copied < copyLength; )
+            copied += oldDest.transferTo(copyStart + copied, copyLength - copied, out);
+        copyLength = 0;
+    }
+
+    // *****************
+
+    /**
+     * This function will collect translated bytes, writing them out whenever the buffer fills up
+     * @param bytes the translated bytes
+     * @throws IOException if writing fails
+     */
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > output.remaining())
+            flush();
+        if (bytes.length > output.capacity()) {           // Too big to collect, write it as it is
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+                out.write(buffer);
+            return;
+        }
+        output.put(bytes);
+    }
+
+    // *****************
+
+    /**
+     * This function will write the collected translated bytes out
+     * @throws IOException if writing fails
+     */
+    private void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining())
+            out.write(output);
+        output.clear();
+    }
+
+    // *****************
+
+    /**
+     * This function will read the index of the last translation
+     * @param file the index file
+     * @param dest the destination the index belongs to
+     * @return the index, or null if there is none or it doesn't match the destination or the settings
+     * @throws IOException if the index can't be read
+     */
+    private Index readIndex(Path file, Path dest) throws IOException {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ORDER);
+        } catch (NoSuchFileException noSuchFileException) {   // Translated for the first time
+            return null;
+        }
+        if (bytes.limit() < HEADER_BYTES || bytes.getInt() != MAGIC || bytes.getInt() != VERSION)
+            return null;
+        Index index = new Index();
+        index.settings = bytes.getLong();
+        index.destSize = bytes.getLong();
+        index.destTime = bytes.getLong();
+        int blocks = bytes.getInt();
+        if (index.settings != settings || blocks < 0 || bytes.remaining() != (long) blocks * ENTRY_BYTES
+                || !Files.exists(dest) || Files.size(dest) != index.destSize
+                || Files.getLastModifiedTime(dest).toMillis() != index.destTime)
+            return null;
+        index.offsets = new long[blocks];
+        long offset = 0;
+        for (int block = 0; block < blocks; ++block) {
+            index.add(bytes.getLong(), bytes.getInt(), bytes.getInt());
+            index.offsets[block] = offset;
+            offset += index.translationLengths[block];
+        }
+        return offset == index.destSize ? index : null;
+    }
+
+    // *****************
+
+    /**
+     * This function will write the index of the new translation next to it and move it into place
+     * @param file the index file
+     * @throws IOException if the index can't be written
+     */
+    private void writeIndex(Path file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + next.blocks * ENTRY_BYTES).order(ORDER);
+
+        bytes.putInt(MAGIC).putInt(VERSION).putLong(next.settings).putLong(next.destSize).putLong(next.destTime)
+                .putInt(next.blocks);
+        for (int block = 0; block < next.blocks; ++block)
+            bytes.putLong(next.hashes[block]).putInt(next.lengths[block]).putInt(next.translationLengths[block]);
+        Path temporary = temporaryOf(file);
+        try {
+            Files.write(temporary, bytes.array());
+            move(temporary, file);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the file that is written before it is moved over the file
+     */
+    private static Path temporaryOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    // *****************
+
+    /**
+     * This function will move a finished file over the file it replaces, atomically where the file system can
+     */
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException atomicMoveNotSupportedException) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return a 64-bit hash of a range of bytes, mixing in 8 bytes at a time
+     */
+    static long hash(byte[] bytes, int from, int to) {
+        long hash = 0x9E3779B97F4A7C15L ^ (to - from);
+        int i = from;
+
+        for (; i + Long.BYTES <= to; i += Long.BYTES)
+            hash = Long.rotateLeft(hash ^ (long) LONGS.get(bytes, i) * 0xC2B2AE3D27D4EB4FL, 31)
+                    * 0x9E3779B97F4A7C15L;
+        long tail = 0;                                    // The last few bytes
+        for (int shift = 0; i < to; ++i, shift += 8)
+            tail |= (bytes[i] & 0xFFL) << shift;
+        hash = Long.rotateLeft(hash ^ tail * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;                              // Spread every bit over the whole hash
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ hash >>> 33;
+    }
+
+    // *****************
+}
@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * This is an index of known words, used to pick one decoding when a Pig Latin word can be decoded in more than
+ * one way, such as "ingstray" without a separator ("ringst", "trings" or "string").
+ * The words are kept in a minimized trie, a word automaton where words that end the same share their endings,
+ * laid out flat in an int array: every node takes two ints, and the children of a node are stored next to each
+ * other sorted by char, so a lookup is one short search per char and allocates nothing. Lookups ignore case.
+ * A lexicon is built from a word list, or compiled once into an index file that is memory-mapped when it is
+ * loaded, so it starts in no time and its pages are shared by every process that maps it.
+ * A Lexicon never changes after it is built, so one instance can be shared by any number of threads.
+ */
+public final class Lexicon {
+    static final int ROOT = 0;                            // Node every lookup starts at
+
+    private static final int MAGIC = 0x504C4C58;          // "PLLX", starts every index file
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;   // Native on x86 and ARM, so ints aren't swapped
+    private static final int VERSION = 1;                 // Layout of the index file
+    private static final int HEADER_INTS = 4;             // Magic, version, number of words and number of nodes
+    private static final int TERMINAL = 1 << 16;          // Node bit: a word ends at this node
+    private static final int COUNT_SHIFT = 17;            // Node bits 17 and up: the number of children
+    private static final int MAX_CHILDREN = (1 << (32 - COUNT_SHIFT)) - 1;
+    private static final int LINEAR_SEARCH = 8;           // Most children scanned one by one instead of searched
+    private static final int MAX_WORD_LENGTH = 255;       // Longer words are left out of the lexicon
+
+    private final IntBuffer nodes;                        // Two ints a node: label | TERMINAL | children, first child
+    private final int words;                              // Number of words
+    private final int[] rootChildren = new int[128];      // Child of the root for every ASCII char, -1 if none
+
+    // *****************
+
+    private Lexicon(IntBuffer nodes, int words) {
+        this.nodes = nodes;
+        this.words = words;
+        for (char label = 0; label < rootChildren.length; ++label)   // Spare every lookup the widest search
+            rootChildren[label] = child(ROOT, label);
+    }
+
+    // *****************
+
+    /**
+     * This function will build a lexicon from words. Symbols and numbers around a word are dropped, and so are
+     * words without letters
+     * @param words the words to index
+     * @return the lexicon
+     */
+    public static Lexicon build(Collection<String> words) {
+        return build(words.stream());
+    }
+
+    // *****************
+
+    /**
+     * This function will load a lexicon from a file. A compiled index file is memory-mapped, anything else is read
+     * as a UTF-8 word list with words separated by whitespace
+     * @param file the index file or word list
+     * @return the lexicon
+     * @throws IOException if the file can't be read or is not a valid index
+     */
+    public static Lexicon load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ORDER);
+            while (magic.hasRemaining() && channel.read(magic) >= 0)
+                ;
+            if (magic.hasRemaining() || magic.getInt(0) != MAGIC) {     // A word list
+                try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                    return build(lines.flatMap(line -> Arrays.stream(line.split("\\s+"))));
+                } catch (UncheckedIOException uncheckedIOException) {
+                    throw uncheckedIOException.getCause();
+                }
+            }
+            IntBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ORDER)
+                    .asIntBuffer();
+            if (index.limit() < HEADER_INTS || index.get(1) != VERSION
+                    || index.limit() != HEADER_INTS + 2L * index.get(3))
+                throw new IOException(file + " is not a valid lexicon index");
+            return new Lexicon(index.position(HEADER_INTS).slice(), index.get(2));
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will write the lexicon as an index file that load maps straight into memory
+     * @param file the index file to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate((HEADER_INTS + nodes.limit()) * Integer.BYTES).order(ORDER);
+
+        index.putInt(MAGIC).putInt(VERSION).putInt(words).putInt(nodes.limit() / 2);
+        index.asIntBuffer().put(0, nodes, 0, nodes.limit());       // The view starts after the header
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            index.rewind();
+            while (index.hasRemaining())
+                out.write(index);
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will check if a word is in the lexicon, ignoring case
+     * @param text the text that holds the word
+     * @param start index of the first char of the word
+     * @param end index one past the last char of the word
+     * @return true if the word is in the lexicon
+     */
+    public boolean contains(CharSequence text, int start, int end) {
+        return isWord(walk(ROOT, text, start, end));
+    }
+
+    // *****************
+
+    /**
+     * This function will follow the chars of the range from a node, ignoring case. A word that is split over
+     * several ranges is looked up by walking every range from the node the last one ended at, starting at ROOT
+     * @param node the node to start at, -1 if an earlier range wasn't found
+     * @param text the text that holds the chars
+     * @param start index of the first char
+     * @param end index one past the last char
+     * @return the node the chars lead to, or -1 if no word starts with them
+     */
+    int walk(int node, CharSequence text, int start, int end) {
+        int i = start;
+
+        if (node == ROOT && i < end) {
+            char label = lowerCase(text.charAt(i++));
+            node = label < rootChildren.length ? rootChildren[label] : child(ROOT, label);
+        }
+        for (; i < end && node >= 0; ++i)
+            node = child(node, lowerCase(text.charAt(i)));
+        return node;
+    }
+
+    // *****************
+
+    /**
+     * @param node a node returned by walk, or -1
+     * @return true if a word ends at the node
+     */
+    boolean isWord(int node) {
+        return node >= 0 && (nodes.get(2 * node) & TERMINAL) != 0;
+    }
+
+    // *****************
+
+    /**
+     * @return the number of words in the lexicon
+     */
+    public int size() {
+        return words;
+    }
+
+    // *****************
+
+    /**
+     * @return the size of the trie in bytes
+     */
+    public long bytes() {
+        return (long) nodes.limit() * Integer.BYTES;
+    }
+
+    // *****************
+
+    @Override
+    public String toString() {
+        return words + " words, " + nodes.limit() / 2 + " nodes, " + bytes() / 1024 + " KB";
+    }
+
+    // *****************
+
+    /**
+     * @return the child of the node with the label, or -1 if there is none
+     */
+    private int child(int node, char label) {
+        int header = nodes.get(2 * node);
+        int low = nodes.get(2 * node + 1);
+        int high = low + (header >>> COUNT_SHIFT) - 1;
+
+        if (high - low < LINEAR_SEARCH) {                 // Few children, a scan beats the branches of a search
+            for (int child = low; child <= high; ++child) {
+                char childLabel = (char) nodes.get(2 * child);
+                if (childLabel >= label)
+                    return childLabel == label ? child : -1;
+            }
+            return -1;
+        }
+        while (low <= high) {                             // Children are sorted by label
+            int middle = (low + high) >>> 1;
+            char middleLabel = (char) nodes.get(2 * middle);
+            if (middleLabel < label)
+                low = middle + 1;
+            else if (middleLabel > label)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * This function will build the trie from the sorted words and minimize it: children blocks that are the same,
+     * such as the endings "ing" or "tion" shared by many words, are stored once, which turns the trie into a word
+     * automaton that is many times smaller and fits in the CPU caches.
+     * @param words the words to index
+     * @return the lexicon
+     */
+    private static Lexicon build(Stream<String> words) {
+        String[] sorted = words.map(Lexicon::normalize).filter(word -> !word.isEmpty())
+                .filter(word -> word.length() <= MAX_WORD_LENGTH).sorted().distinct().toArray(String[]::new);
+        Builder builder = new Builder();
+        long root = builder.node(sorted, 0, sorted.length, 0, '\0');
+
+        builder.nodes[0] = (int) (root >>> 32);
+        builder.nodes[1] = (int) root;
+        return new Lexicon(IntBuffer.wrap(Arrays.copyOf(builder.nodes, builder.size)), sorted.length);
+    }
+
+    // *****************
+
+    /**
+     * Lays out the minimized trie. Children blocks are written once all of their own children are, and a block
+     * that is the same as one written before is not written again
+     */
+    private static final class Builder {
+        private final Map<IntBuffer, Integer> blocks = new HashMap<>();   // Node index of every block written
+        private int[] nodes = new int[1 << 10];           // Two ints a node, the root first
+        private int size = 2;                             // Ints used, the root is written last
+
+        /**
+         * This function will lay out the children of the node that stands for the sorted words from low to high,
+         * which share their first depth chars. Words are grouped by their next char, and every group is a child
+         * @return the header of the node in the high int and the node index of its first child in the low int
+         */
+        long node(String[] sorted, int low, int high, int depth, char label) {
+            boolean terminal = low < high && sorted[low].length() == depth;
+            int[] block = new int[8];                     // The children: two ints each
+            int children = 0;
+
+            for (int i = terminal ? low + 1 : low; i < high; ) {
+                char childLabel = sorted[i].charAt(depth);
+                int j = i + 1;
+                while (j < high && sorted[j].charAt(depth) == childLabel)
+                    ++j;
+                long child = node(sorted, i, j, depth + 1, childLabel);
+                if (2 * children + 2 > block.length)
+                    block = Arrays.copyOf(block, 2 * block.length);
+                block[2 * children] = (int) (child >>> 32);
+                block[2 * children + 1] = (int) child;
+                ++children;
+                i = j;
+            }
+            if (children > MAX_CHILDREN)
+                throw new IllegalArgumentException("Too many different chars follow one prefix");
+            int firstChild = 0;
+            if (children > 0)
+                firstChild = blocks.computeIfAbsent(IntBuffer.wrap(Arrays.copyOf(block, 2 * children)), this::add);
+            return (long) (label | (terminal ? TERMINAL : 0) | children << COUNT_SHIFT) << 32 | firstChild;
+        }
+
+        /**
+         * @return the node index the block was written at
+         */
+        private int add(IntBuffer block) {
+            while (size + block.limit() > nodes.length)
+                nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+            block.get(0, nodes, size, block.limit());
+            size += block.limit();
+            return (size - block.limit()) / 2;
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the char in lower case, without going through the Unicode tables for ASCII
+     */
+    private static char lowerCase(char character) {
+        if (character < 128)
+            return character >= 'A' && character <= 'Z' ? (char) (character + ('a' - 'A')) : character;
+        return Character.toLowerCase(character);
+    }
+
+    // *****************
+
+    /**
+     * @return the word without the symbols and numbers around it, in lower case, or "" if it has no letters
+     */
+    private static String normalize(String word) {
+        int start = 0;
+        int end = word.length();
+
+        while (start < end && !Character.isLetter(word.charAt(start)))
+            ++start;
+        while (end > start && !Character.isLetter(word.charAt(end - 1)))
+            --end;
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; ++i)                 // Lower case one char at a time, like the lookups
+            chars[i - start] = lowerCase(word.charAt(i));
+        return new String(chars);
+    }
+
+    // *****************
+}
@@ -0,0 +1,387 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Translates a slice of a huge file, a range of lines or of bytes, without reading the file up to it. A sidecar
+ * index next to the source, "source.lines", keeps the byte offset of every STRIDE-th line, 8 bytes per STRIDE
+ * lines, so it stays a tiny fraction of the file. A slice seeks to the indexed line before it and reads forward
+ * from there, so its cost follows the size of the slice, not where it is in the file.
+ * The index is built in one pass over the source the first time it is needed, and only trusted while the source
+ * still has the size and modification time it recorded, so an edited source gets a new index instead of wrong
+ * offsets. Lines end at "\n", "\r" or "\r\n" like BufferedReader.readLine sees them, and the text is read in UTF-8,
+ * like the NIO engine. The translated lines are the same lines of a translation of the whole file: empty lines are
+ * written as " \n", and the ones at the end of the slice are dropped only if nothing but empty lines follows them.
+ */
+public class LineIndex {
+    private static final int MAGIC = 0x504C4C49;           // "PLLI", starts every index file
+    private static final int VERSION = 1;                  // Layout of the index file
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int HEADER_BYTES = 36;            // Magic, version, stride, source size, time, lines
+    private static final int STRIDE = 1024;                // Lines from one indexed line to the next
+    private static final int BUFFER_SIZE = 1 << 16;        // Bytes read from the source at once
+
+    private final Path source;                             // The file the index is for
+    private final long lines;                              // Lines of the source
+    private final long[] offsets;                          // Offset of line 0, STRIDE, 2 * STRIDE and so on
+    private final boolean built;                           // The index was built by this object, not read
+
+    // *****************
+
+    /**
+     * The constructor that sets the lines of an index that was read or built
+     */
+    private LineIndex(Path source, long lines, long[] offsets, boolean built) {
+        this.source = source;
+        this.lines = lines;
+        this.offsets = offsets;
+        this.built = built;
+    }
+
+    // *****************
+
+    /**
+     * @param source a source file
+     * @return the sidecar line index of the source
+     */
+    public static Path indexOf(Path source) {
+        return source.resolveSibling(source.getFileName() + ".lines");
+    }
+
+    // *****************
+
+    /**
+     * This function will read the line index of the source, or build it and save it next to the source if there
+     * is none or the source changed since it was built
+     * @param source the file to index
+     * @return the line index of the source
+     * @throws IOException if the source can't be read or the index can't be written
+     */
+    public static LineIndex open(Path source) throws IOException {
+        Path file = indexOf(source);
+        long size = Files.size(source);
+        long time = Files.getLastModifiedTime(source).toMillis();
+        LineIndex index = read(source, file, size, time);
+
+        if (index != null)
+            return index;
+        index = build(source);
+        if (Files.size(source) == size && Files.getLastModifiedTime(source).toMillis() == time)
+            index.write(file, size, time);                 // Not saved if the source changed while it was read
+        return index;
+    }
+
+    // *****************
+
+    /**
+     * @return the number of lines of the source
+     */
+    public long lines() {
+        return lines;
+    }
+
+    // *****************
+
+    /**
+     * @return true if the index had to be built, false if it was read from its file
+     */
+    public boolean built() {
+        return built;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate a range of lines of the source into the writer. The writer is not closed or
+     * flushed
+     * @param first the first line to translate, counting from 1
+     * @param last the last line to translate, included. Lines past the end of the source are ignored
+     * @param sentenceTranslator translates one line
+     * @param out where the translated lines go
+     * @return the number of lines of the source in the range
+     * @throws IOException if reading or writing fails
+     */
+    public long translateLines(long first, long last, SentenceTranslator sentenceTranslator, Writer out)
+            throws IOException {
+        if (first < 1 || last < first)
+            throw new IllegalArgumentException("Invalid line range " + first + "-" + last);
+        long count = Math.min(last, lines) - first + 1;   // Lines of the range that are in the source
+        if (count <= 0)
+            return 0;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            int entry = (int) ((first - 1) / STRIDE);
+            Lines scanner = new Lines(in, (long) entry * STRIDE, offsets[entry]);
+            while (scanner.line < first - 1)               // Read forward to the first line
+                scanner.next();
+            translate(in, scanner.start, count, sentenceTranslator, out);
+        }
+        return count;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the lines that hold a range of bytes of the source into the writer, whole
+     * lines from the one the range starts in to the one it ends in. The writer is not closed or flushed
+     * @param from offset of the first byte of the range
+     * @param to offset one past the last byte of the range. Bytes past the end of the source are ignored
+     * @param sentenceTranslator translates one line
+     * @param out where the translated lines go
+     * @return the number of lines translated
+     * @throws IOException if reading or writing fails
+     */
+    public long translateBytes(long from, long to, SentenceTranslator sentenceTranslator, Writer out)
+            throws IOException {
+        if (from < 0 || to <= from)
+            throw new IllegalArgumentException("Invalid byte range " + from + "-" + to);
+        long first;                                        // Lines that hold the first and last bytes
+        long last;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (from >= in.size())
+                return 0;
+            first = lineAt(in, from);
+            last = lineAt(in, to - 1);
+        }
+        return first > last ? 0 : translateLines(first, last, sentenceTranslator, out);
+    }
+
+    // *****************
+
+    /**
+     * @param in the source
+     * @param offset offset of a byte of the source
+     * @return the line that holds the byte, counting from 1, or the last line if the byte is past the end
+     */
+    private long lineAt(FileChannel in, long offset) throws IOException {
+        int entry = Arrays.binarySearch(offsets, offset);
+        if (entry < 0)                                     // The indexed line before the byte
+            entry = -entry - 2;
+        if (entry < 0)                                     // The source is empty
+            return 0;
+        Lines scanner = new Lines(in, (long) entry * STRIDE, offsets[entry]);
+        long line = scanner.line;                          // Last line that starts at or before the byte
+
+        while (scanner.next() && scanner.start <= offset)
+            line = scanner.line;
+        return line + 1;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate lines read from an offset of the source like a translation of the whole file
+     * does
+     * @param in the source
+     * @param start offset of the first line
+     * @param count lines to translate
+     * @param sentenceTranslator translates one line
+     * @param out where the translated lines go
+     * @throws IOException if reading or writing fails
+     */
+    private static void translate(FileChannel in, long start, long count, SentenceTranslator sentenceTranslator,
+                                  Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(in.position(start)),
+                StandardCharsets.UTF_8), BUFFER_SIZE);     // Not closed, the channel is closed by the caller
+        StringBuilder translation = new StringBuilder();  // Translated line, reused for every line
+        long emptyLines = 0;                              // Empty lines waiting to be written
+        String line;
+
+        for (long read = 0; read < count && (line = reader.readLine()) != null; ++read) {
+            if (line.isEmpty())                           // Hold on to empty lines
+                ++emptyLines;
+            else {
+                for (; emptyLines > 0; --emptyLines)      // A sentence follows, so write the empty lines
+                    out.write(" \n");
+                translation.setLength(0);
+                sentenceTranslator.translate(line, 0, line.length(), translation);
+                out.append(translation).append('\n');
+            }
+        }
+        while (emptyLines > 0 && (line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {                        // A sentence follows the slice, so they are written
+                for (; emptyLines > 0; --emptyLines)
+                    out.write(" \n");
+            }
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will read the source once and note where every STRIDE-th line starts
+     * @param source the file to index
+     * @return the index of the source
+     * @throws IOException if the source can't be read
+     */
+    private static LineIndex build(Path source) throws IOException {
+        long[] offsets = new long[64];
+        int entries = 0;
+        long lines = 0;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (in.size() > 0) {
+                Lines scanner = new Lines(in, 0, 0);
+                offsets[entries++] = 0;
+                lines = 1;
+                while (scanner.next()) {
+                    ++lines;
+                    if (scanner.line % STRIDE == 0) {
+                        if (entries == offsets.length)
+                            offsets = Arrays.copyOf(offsets, 2 * entries);
+                        offsets[entries++] = scanner.start;
+                    }
+                }
+            }
+        }
+        return new LineIndex(source, lines, Arrays.copyOf(offsets, entries), true);
+    }
+
+    // *****************
+
+    /**
+     * This function will read the index of the source from its file
+     * @param source the file the index is for
+     * @param file the index file
+     * @param size the size of the source
+     * @param time the modification time of the source in milliseconds
+     * @return the index, or null if there is none or it doesn't match the source
+     * @throws IOException if the index can't be read
+     */
+    private static LineIndex read(Path source, Path file, long size, long time) throws IOException {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ORDER);
+        } catch (NoSuchFileException noSuchFileException) {   // Indexed for the first time
+            return null;
+        }
+        if (bytes.limit() < HEADER_BYTES || bytes.getInt() != MAGIC || bytes.getInt() != VERSION
+                || bytes.getInt() != STRIDE || bytes.getLong() != size || bytes.getLong() != time)
+            return null;
+        long lines = bytes.getLong();
+        long entries = (lines + STRIDE - 1) / STRIDE;
+        if (lines < 0 || bytes.remaining() != entries * Long.BYTES)
+            return null;
+        long[] offsets = new long[(int) entries];
+        bytes.asLongBuffer().get(offsets);
+        return new LineIndex(source, lines, offsets, false);
+    }
+
+    // *****************
+
+    /**
+     * This function will write the index next to the source and move it into place
+     * @param file the index file
+     * @param size the size of the source
+     * @param time the modification time of the source in milliseconds
+     * @throws IOException if the index can't be written
+     */
+    private void write(Path file, long size, long time) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + offsets.length * Long.BYTES).order(ORDER);
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(STRIDE).putLong(size).putLong(time).putLong(lines);
+        bytes.asLongBuffer().put(offsets);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temporary, bytes.array());
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException atomicMoveNotSupportedException) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // *****************
+
+    /**
+     * Walks the lines of the source from a line whose offset is known, reading ahead in blocks
+     */
+    private static final class Lines {
+        private final FileChannel in;           // The source
+        private byte[] bytes = new byte[BUFFER_SIZE];
+        private int length;                     // Bytes of the buffer filled
+        private int position;                   // Next byte of the buffer to look at
+        private long offset;                    // Offset of the first byte of the buffer in the source
+        private boolean ended;                  // Every byte of the source was read
+        long line;                              // The line the walk is at, counting from 0
+        long start;                             // Offset of the first byte of the line
+
+        Lines(FileChannel in, long line, long start) {
+            this.in = in;
+            this.line = line;
+            this.start = start;
+            this.offset = start;
+        }
+
+        /**
+         * This function will move to the next line
+         * @return false if the line the walk is at is the last one, and the walk stays there
+         * @throws IOException if reading fails
+         */
+        boolean next() throws IOException {
+            while (true) {
+                int end = TokenScanner.indexOfLineEnd(bytes, position, length);
+                if (end < 0) {                             // The line goes on past the bytes read
+                    position = length;
+                    if (!fill())
+                        return false;
+                    continue;
+                }
+                if (bytes[end] == '\r' && end + 1 == length && !ended) {   // Can't tell "\r" from "\r\n" yet
+                    position = end;
+                    fill();
+                    continue;
+                }
+                position = end + 1;
+                if (bytes[end] == '\r' && position < length && bytes[position] == '\n')
+                    ++position;                            // "\r\n" ends a single line
+                if (position == length && !fill())        // The source ends with the line end
+                    return false;
+                ++line;
+                start = offset + position;
+                return true;
+            }
+        }
+
+        /**
+         * This function will drop the bytes before the position and read more of the source
+         * @return false if there is no more to read
+         */
+        private boolean fill() throws IOException {
+            if (ended)
+                return false;
+            length -= position;
+            System.arraycopy(bytes, position, bytes, 0, length);
+            offset += position;
+            position = 0;
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            int read = in.read(ByteBuffer.wrap(bytes, length, bytes.length - length), offset + length);
+            if (read < 0) {
+                ended = true;
+                return false;
+            }
+            length += read;
+            return true;
+        }
+    }
+
+    // *****************
+}
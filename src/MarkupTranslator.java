@@ -0,0 +1,474 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Translates the prose of Markdown or simple HTML and copies the markup as it is, in one pass over the text and
+ * without building a tree. The text is read line by line, and a handful of fields remember what spans lines (a
+ * fenced code block, a comment, a tag whose attributes go on, the content of a pre, code, script, style or
+ * textarea element), so memory doesn't grow with the document.
+ * - Copied as they are: tags with their attributes, comments, the content of raw elements, character references
+ *   such as "&amp;", and URLs in the text.
+ * - Also copied in Markdown: fenced and indented code blocks, code spans, link destinations "(url "title")",
+ *   reference labels "[label]", link reference definitions and autolinks "<https://...>".
+ * - Everything else is prose and goes through the prose translator, a translation that keeps the layout, so the
+ *   Markdown markers around words (#, >, -, *, _, [ and ]) and every space and line end stay where they are.
+ * In Markdown a '<' only starts a tag if the tag ends on the same line, so "a < b" stays prose. A MarkupTranslator
+ * keeps the state of the text it is reading, so it must not be shared by threads that translate at the same time.
+ */
+public class MarkupTranslator {
+    private static final int BUFFER_SIZE = 1 << 16;        // Chars read at once and written out at once
+    private static final int MAX_ENTITY = 32;              // Longest character reference looked for
+    private static final List<String> RAW_ELEMENTS = Arrays.asList("pre", "code", "script", "style",
+            "textarea");                                   // Elements whose content is copied as it is
+    private static final String[] URL_PREFIXES = {"http://", "https://", "ftp://", "mailto:", "www."};
+
+    /**
+     * The markup languages understood
+     */
+    public enum Format {
+        MARKDOWN,
+        HTML;
+
+        /**
+         * @param filename a file name, maybe ending in ".gz"
+         * @return the format of the file by its extension, or null if it is neither Markdown nor HTML
+         */
+        public static Format of(String filename) {
+            String name = filename.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".gz"))
+                name = name.substring(0, name.length() - 3);
+            if (name.endsWith(".md") || name.endsWith(".markdown") || name.endsWith(".mdown"))
+                return MARKDOWN;
+            if (name.endsWith(".html") || name.endsWith(".htm") || name.endsWith(".xhtml"))
+                return HTML;
+            return null;
+        }
+    }
+
+    private final SentenceTranslator proseTranslator;       // Translates prose keeping its layout
+    private final boolean markdown;                          // Markdown rules on top of the HTML ones
+    private char fenceChar;                                  // '`' or '~' inside a fenced code block, 0 outside
+    private int fenceLength;                                 // Length of the fence that opened the block
+    private boolean indentedCode;                            // Inside an indented code block
+    private boolean previousBlank;                           // The line before was blank
+    private boolean inComment;                               // Inside <!-- -->
+    private boolean inTag;                                   // Inside a tag that didn't end on its line
+    private char tagQuote;                                   // Quote of the attribute value the tag is inside, or 0
+    private String pendingRaw;                               // Raw element the tag being read opens, or null
+    private String raw;                                      // Raw element whose content is being copied, or null
+
+    // *****************
+
+    /**
+     * The constructor that sets the format and the prose translator
+     * @param proseTranslator translates prose keeping its layout, such as WordTranslator::encodeKeepingLayout
+     * @param format the markup language of the text
+     */
+    public MarkupTranslator(SentenceTranslator proseTranslator, Format format) {
+        this.proseTranslator = proseTranslator;
+        this.markdown = format == Format.MARKDOWN;
+        reset();
+    }
+
+    // *****************
+
+    /**
+     * This function will forget the state of the text read so far, to start on a new document
+     */
+    public void reset() {
+        fenceChar = 0;
+        fenceLength = 0;
+        indentedCode = false;
+        previousBlank = true;
+        inComment = false;
+        inTag = false;
+        tagQuote = 0;
+        pendingRaw = null;
+        raw = null;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the document from the reader into the writer, a block of whole lines at a time.
+     * Neither of them is closed, and the writer is flushed only if asked to
+     * @param in the reader to take the document from
+     * @param out the writer to put the translated document into
+     * @param flushWhenIdle true to flush the writer before waiting for more text
+     * @throws IOException if reading or writing fails
+     */
+    public void translate(Reader in, Writer out, boolean flushWhenIdle) throws IOException {
+        char[] block = new char[BUFFER_SIZE];              // Text read and not translated yet
+        int length = 0;                                    // Chars of the block filled
+        StringBuilder translation = new StringBuilder();  // Translation of the lines of a block
+        boolean ended = false;
+
+        reset();
+        while (!ended || length > 0) {
+            if (length == block.length)                    // A line longer than the block, make room for the rest
+                block = Arrays.copyOf(block, 2 * block.length);
+            int read = ended ? -1 : in.read(block, length, block.length - length);
+            if (read < 0)
+                ended = true;
+            else
+                length += read;
+            int cut = length;                              // After the last line end, or the end of the text
+            while (!ended && cut > 0 && block[cut - 1] != '\n')
+                --cut;
+            if (cut == 0)
+                continue;
+
+            String text = new String(block, 0, cut);
+            translation.setLength(0);
+            for (int start = 0; start < cut; ) {
+                int end = text.indexOf('\n', start) + 1;
+                if (end == 0)
+                    end = cut;
+                translateLine(text, start, end, translation);
+                start = end;
+            }
+            out.append(translation);
+            length -= cut;
+            System.arraycopy(block, cut, block, 0, length);
+            if (flushWhenIdle && !in.ready())              // Reading on would block, so hand over what we have
+                out.flush();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate one line of the document, with its line end
+     * @param text the text that holds the line
+     * @param start index of the first char of the line
+     * @param end index one past the line end
+     * @param out the buffer to append the translated line to
+     */
+    void translateLine(String text, int start, int end, StringBuilder out) {
+        if (markdown && !inComment && !inTag && raw == null && markdownBlock(text, start, end)) {
+            out.append(text, start, end);                  // Code, copied as it is
+            return;
+        }
+        translateInline(text, start, end, out);
+    }
+
+    // *****************
+
+    /**
+     * This function will follow the Markdown blocks a line opens, closes or belongs to
+     * @return true if the whole line is copied: a fence or a line of a code block, or a link reference definition
+     */
+    private boolean markdownBlock(String text, int start, int end) {
+        int indent = 0;                                    // Columns of leading spaces and tabs
+        int first = start;                                 // First char after them
+
+        for (; first < end && (text.charAt(first) == ' ' || text.charAt(first) == '\t'); ++first)
+            indent += text.charAt(first) == '\t' ? 4 - indent % 4 : 1;
+        boolean blank = first == end || text.charAt(first) == '\n' || text.charAt(first) == '\r';
+        if (fenceChar != 0) {                              // Inside a fenced code block until its closing fence
+            if (indent <= 3 && fenceRun(text, first, end, fenceChar) >= fenceLength
+                    && isBlank(text, first + fenceRun(text, first, end, fenceChar), end))
+                fenceChar = 0;
+            return true;
+        }
+        if (!blank && indent >= 4 && (previousBlank || indentedCode)) {   // Indented code
+            indentedCode = true;
+            previousBlank = false;
+            return true;
+        }
+        if (!blank)
+            indentedCode = false;
+        previousBlank = blank;
+        if (blank || indent > 3)
+            return false;
+
+        char c = text.charAt(first);
+        int run = (c == '`' || c == '~') ? fenceRun(text, first, end, c) : 0;
+        if (run >= 3 && (c == '~' || text.indexOf('`', first + run) < 0
+                || text.indexOf('`', first + run) >= end)) {   // An opening fence, no '`' in a '`' info string
+            fenceChar = c;
+            fenceLength = run;
+            return true;
+        }
+        if (c == '[') {                                    // "[label]: destination" defines a link
+            int close = text.indexOf("]:", first);
+            return close > first + 1 && close < end;
+        }
+        return false;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the prose of a line and copy its markup, from where the state left off
+     * @param text the text that holds the line
+     * @param start index of the first char of the line
+     * @param end index one past the line end
+     * @param out the buffer to append the translated line to
+     */
+    private void translateInline(String text, int start, int end, StringBuilder out) {
+        int prose = start;                                 // Start of the prose not translated yet
+        int i = start;
+
+        while (i < end) {
+            int markupEnd;                                 // End of the markup at i, -1 if i is prose
+            if (inComment)
+                markupEnd = endOfComment(text, i, end);
+            else if (inTag)
+                markupEnd = endOfTag(text, i, end);
+            else if (raw != null) {                        // Up to the closing tag, which is read as a tag
+                int close = indexOfIgnoreCase(text, "</" + raw, i, end);
+                markupEnd = close < 0 ? end : close;
+                if (close >= 0)
+                    raw = null;
+            } else {
+                char c = text.charAt(i);
+                if (c == '<')
+                    markupEnd = tag(text, i, end);
+                else if (c == '&')
+                    markupEnd = entity(text, i, end);
+                else if (c == '`' && markdown)
+                    markupEnd = codeSpan(text, i, end);
+                else if (c == ']' && markdown && i + 1 < end
+                        && (text.charAt(i + 1) == '(' || text.charAt(i + 1) == '['))
+                    markupEnd = linkTarget(text, i + 1, end);
+                else if ((c == 'h' || c == 'f' || c == 'm' || c == 'w' || c == 'H' || c == 'F' || c == 'M'
+                        || c == 'W') && isUrl(text, start, i, end))
+                    markupEnd = endOfUrl(text, i, end);
+                else
+                    markupEnd = -1;
+            }
+            if (markupEnd < 0) {
+                ++i;
+                continue;
+            }
+            if (prose < i)
+                proseTranslator.translate(text, prose, i, out);
+            out.append(text, i, markupEnd);
+            i = markupEnd;
+            prose = i;
+        }
+        if (prose < end)
+            proseTranslator.translate(text, prose, end, out);
+    }
+
+    // *****************
+
+    /**
+     * This function will read a tag, a comment or an autolink that starts at a '<'. In Markdown a tag must end on
+     * its line
+     * @return the end of what was read on this line, or -1 if the '<' doesn't start a tag
+     */
+    private int tag(String text, int start, int end) {
+        if (text.startsWith("<!--", start)) {
+            inComment = true;
+            return endOfComment(text, start + 4, end);
+        }
+        int nameStart = start + 1;
+        if (nameStart < end && text.charAt(nameStart) == '/')
+            ++nameStart;
+        if (nameStart >= end)
+            return -1;
+        char first = text.charAt(nameStart);
+        if (!Character.isLetter(first) && first != '!' && first != '?')
+            return -1;
+        int nameEnd = nameStart + 1;
+        while (nameEnd < end && (Character.isLetterOrDigit(text.charAt(nameEnd)) || text.charAt(nameEnd) == '-'))
+            ++nameEnd;
+        String name = text.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+        pendingRaw = nameStart == start + 1 && RAW_ELEMENTS.contains(name) ? name : null;
+        inTag = true;
+        tagQuote = 0;
+        int tagEnd = endOfTag(text, nameEnd, end);
+        if (markdown && inTag) {                           // No '>' on the line, so it was prose after all
+            inTag = false;
+            pendingRaw = null;
+            return -1;
+        }
+        return tagEnd;
+    }
+
+    // *****************
+
+    /**
+     * This function will read on to the '>' that ends the tag, skipping the quoted attribute values
+     * @return the index after the '>', or the end of the line if the tag goes on
+     */
+    private int endOfTag(String text, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+            if (tagQuote != 0) {
+                if (c == tagQuote)
+                    tagQuote = 0;
+            } else if (c == '"' || c == '\'')
+                tagQuote = c;
+            else if (c == '>') {
+                inTag = false;
+                if (pendingRaw != null && (i == start || text.charAt(i - 1) != '/'))
+                    raw = pendingRaw;                      // Not self-closing, the content is copied
+                pendingRaw = null;
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    // *****************
+
+    /**
+     * @return the index after the "-->" that ends the comment, or the end of the line if it goes on
+     */
+    private int endOfComment(String text, int start, int end) {
+        int close = text.indexOf("-->", start);
+        if (close < 0 || close + 3 > end)
+            return end;
+        inComment = false;
+        return close + 3;
+    }
+
+    // *****************
+
+    /**
+     * @return the index after the character reference that starts at the '&', such as "&amp;", "&#39;" or
+     * "&#x27;", or -1 if there is none
+     */
+    private static int entity(String text, int start, int end) {
+        int limit = Math.min(end, start + MAX_ENTITY);
+        int i = start + 1;
+
+        if (i < limit && text.charAt(i) == '#') {
+            ++i;
+            boolean hex = i < limit && (text.charAt(i) == 'x' || text.charAt(i) == 'X');
+            if (hex)
+                ++i;
+            int digits = i;
+            while (i < limit && Character.digit(text.charAt(i), hex ? 16 : 10) >= 0)
+                ++i;
+            return i > digits && i < limit && text.charAt(i) == ';' ? i + 1 : -1;
+        }
+        int name = i;
+        while (i < limit && (text.charAt(i) < 0x80 && Character.isLetterOrDigit(text.charAt(i))))
+            ++i;
+        return i > name && i < limit && text.charAt(i) == ';' ? i + 1 : -1;
+    }
+
+    // *****************
+
+    /**
+     * @return the index after the code span that starts with the run of '`', or after the run itself if no run
+     * of the same length closes it on the line, so the run is copied and not tried again shorter
+     */
+    private static int codeSpan(String text, int start, int end) {
+        int length = fenceRun(text, start, end, '`');
+        for (int i = text.indexOf('`', start + length); i >= 0 && i < end; ) {
+            int run = fenceRun(text, i, end, '`');
+            if (run == length)
+                return i + run;
+            i = text.indexOf('`', i + run);
+        }
+        return start + length;
+    }
+
+    // *****************
+
+    /**
+     * This function will read the destination of a link, "(url "title")", or the label of a reference, "[label]",
+     * that follows the ']' of the link text. Parentheses can be nested in the destination
+     * @param start index of the '(' or the '['
+     * @return the index after the ')' or the ']' that closes it, or -1 if it is not closed on the line
+     */
+    private static int linkTarget(String text, int start, int end) {
+        char open = text.charAt(start);
+        char close = open == '(' ? ')' : ']';
+        int depth = 0;
+
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+            if (c == '\\')
+                ++i;                                       // An escaped char never opens or closes
+            else if (c == open)
+                ++depth;
+            else if (c == close && --depth == 0)
+                return i + 1;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * @return true if a URL starts at the index, at the start of a word of the line
+     */
+    private static boolean isUrl(String text, int lineStart, int start, int end) {
+        if (start > lineStart) {
+            char before = text.charAt(start - 1);
+            if (!WordTranslator.isWhitespace(before) && before != '(' && before != '"' && before != '\'')
+                return false;
+        }
+        for (String prefix : URL_PREFIXES) {
+            if (start + prefix.length() < end && text.regionMatches(true, start, prefix, 0, prefix.length()))
+                return true;
+        }
+        return false;
+    }
+
+    // *****************
+
+    /**
+     * @return the index of the whitespace, '<', '>' or '"' that ends the URL, or the end of the line. A ')' or a
+     * '.', ',', ';', ':', '!' or '?' at its very end is left to the prose
+     */
+    private static int endOfUrl(String text, int start, int end) {
+        int i = start;
+        while (i < end && !WordTranslator.isWhitespace(text.charAt(i)) && "<>\"".indexOf(text.charAt(i)) < 0)
+            ++i;
+        while (i > start && ").,;:!?".indexOf(text.charAt(i - 1)) >= 0)
+            --i;
+        return i;
+    }
+
+    // *****************
+
+    /**
+     * @return the length of the run of the char that starts at the index
+     */
+    private static int fenceRun(String text, int start, int end, char c) {
+        int i = start;
+        while (i < end && text.charAt(i) == c)
+            ++i;
+        return i - start;
+    }
+
+    // *****************
+
+    /**
+     * @return true if there is only whitespace from the index to the end of the line
+     */
+    private static boolean isBlank(String text, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if (!WordTranslator.isWhitespace(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    // *****************
+
+    /**
+     * @return the index of the first copy of the string from the start on, ignoring case, or -1 if there is none
+     * before the end
+     */
+    private static int indexOfIgnoreCase(String text, String string, int start, int end) {
+        for (int i = text.indexOf('<', start); i >= 0 && i + string.length() <= end; i = text.indexOf('<', i + 1)) {
+            if (text.regionMatches(true, i, string, 0, string.length()))
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+}
@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This is the NIO file engine. It maps the source file into memory a window at a time with FileChannel.map and
+ * writes the translation through one reusable direct ByteBuffer into a FileChannel, which skips the read/write
+ * syscalls and the hidden temporary buffers of the Reader/Writer path.
+ * Lines are split on the UTF-8 bytes themselves, since "\n" and "\r" never show up inside a multi-byte char. Most
+ * lines are all ASCII, and those are translated straight from the bytes through an AsciiBytes view and narrowed
+ * back into bytes, so they are never decoded into chars or encoded by a charset coder. Only a line with a byte
+ * above 0x7F is decoded into a String, translated as chars and encoded again.
+ * Mapped bytes are bulk copied into a small heap buffer before they are split, which is where block at a time
+ * searches work, and translated bytes are bulk copied into the direct buffer before writing.
+ * Lines are handed to the sentence translator one at a time, so only the current line is ever held on the heap.
+ */
+public class NioFileEngine {
+    private static final long MAP_WINDOW = 64L << 20;      // Bytes of the source mapped at once
+    private static final int CHAR_BUFFER_SIZE = 1 << 16;   // Chars of a non-ASCII line encoded at once
+    private static final int STAGING_SIZE = 1 << 16;       // Bytes copied out of the mapping at once
+    private static final int BYTE_BUFFER_SIZE = 1 << 18;   // Bytes collected before each write to the destination
+
+    private final SentenceTranslator sentenceTranslator;     // Translates one line of text without its newline
+    private final CharsetEncoder encoder;                    // Turns translated chars of non-ASCII lines into UTF-8
+    private final AsciiBytes ascii;                          // Shows an ASCII line as chars, reused for every line
+    private final CharBuffer output;                         // Translated chars waiting to be encoded
+    private final ByteBuffer encoded;                        // Translated bytes waiting to be copied out
+    private final ByteBuffer bytes;                          // Translated bytes waiting to be written
+    private final StringBuilder translation;                 // Translation of the line, reused for every line
+    private byte[] staged;                                   // Mapped bytes copied out, unfinished line first
+    private int stagedLength;                                // Bytes used in staged
+    private int searched;                                    // Bytes of staged known to hold no line end
+    private char[] chars;                                    // Chars of a translated ASCII line being narrowed
+    private FileChannel out;                                 // Destination of the translation
+    private int emptyLines;                                  // Empty lines waiting for a non-empty line
+    private boolean skipNewline;                             // The last line ended with '\r', so skip a '\n'
+    private long lines;                                      // Lines translated, counted with metrics only
+    private long charsRead;                                  // Chars of the lines read, counted with metrics only
+    private long charsWritten;                               // Chars of translation written, counted with metrics only
+
+    // *****************
+
+    /**
+     * The constructor that sets up the reusable buffers of the engine
+     * @param sentenceTranslator translates one line of text without its newline
+     */
+    public NioFileEngine(SentenceTranslator sentenceTranslator) {
+        this.sentenceTranslator = sentenceTranslator;
+        this.encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.ascii = new AsciiBytes();
+        this.output = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        this.encoded = ByteBuffer.allocate(STAGING_SIZE);
+        this.bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+        this.translation = new StringBuilder();
+        this.staged = new byte[STAGING_SIZE];
+        this.chars = new char[0];
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the source file into the destination file. Lines end at "\n", "\r" or "\r\n",
+     * like BufferedReader.readLine, and empty lines at the end of the text are dropped like the stream path does.
+     * Bytes that are not valid UTF-8 are replaced the way a decoder replaces them.
+     * @param source the file to translate
+     * @param dest the file to write the translation to
+     * @throws IOException if reading or writing fails
+     */
+    public void translate(Path source, Path dest) throws IOException {
+        TranslationMetrics.TranslationEvent event = TranslationMetrics.ENABLED
+                ? new TranslationMetrics.TranslationEvent() : null;
+        if (event != null)
+            event.begin();
+        encoder.reset();
+        output.clear();
+        encoded.clear();
+        bytes.clear();
+        stagedLength = 0;
+        searched = 0;
+        emptyLines = 0;
+        skipNewline = false;
+        lines = 0;
+        charsRead = 0;
+        charsWritten = 0;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.out = out;
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {                             // Map the source one window at a time
+                long length = Math.min(MAP_WINDOW, size - position);
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+                readWindow(window);
+            }
+
+            if (stagedLength > 0)                                 // The text didn't end with a newline
+                endLine(staged, 0, stagedLength);
+            encode(true);                                         // Flush the encoder and the last bytes
+            while (encoder.flush(encoded) == CoderResult.OVERFLOW)
+                stage();
+            stage();
+            drain();
+        } finally {
+            this.out = null;
+        }
+        if (event != null) {
+            event.lines = lines;
+            event.charsRead = charsRead;
+            event.charsWritten = charsWritten;
+            event.commit();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will copy a mapped window of the source out in bulk and split the bytes into lines. A line cut
+     * in half by the end of the window stays staged until the rest of it is read from the next window
+     * @param window the mapped bytes of the source
+     * @throws IOException if writing fails
+     */
+    private void readWindow(MappedByteBuffer window) throws IOException {
+        while (window.hasRemaining()) {
+            if (stagedLength == staged.length)            // A line longer than the buffer, make room for the rest
+                staged = Arrays.copyOf(staged, 2 * staged.length);
+            int length = Math.min(staged.length - stagedLength, window.remaining());
+            long started = TranslationMetrics.ENABLED ? System.nanoTime() : 0;
+            window.get(staged, stagedLength, length);
+            if (TranslationMetrics.ENABLED)                  // Page faults of the mapping show up here
+                TranslationMetrics.record(TranslationMetrics.Stage.READ, started);
+            stagedLength += length;
+            splitLines();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate every complete line of the staged bytes, 8 bytes at a time, and move the
+     * unfinished line at the end to the front for the next bytes
+     * @throws IOException if writing fails
+     */
+    private void splitLines() throws IOException {
+        int start = 0;                                    // Start of the line being split off
+        int end;                                          // Index of the line end
+
+        if (skipNewline) {                                // The last bytes ended with '\r', so a '\n' goes with it
+            skipNewline = false;
+            if (staged[0] == '\n')
+                start = 1;
+        }
+        while ((end = TokenScanner.indexOfLineEnd(staged, Math.max(start, searched), stagedLength)) >= 0) {
+            endLine(staged, start, end);
+            start = end + 1;
+            if (staged[end] == '\r') {                    // "\r\n" ends a single line
+                if (start == stagedLength)
+                    skipNewline = true;
+                else if (staged[start] == '\n')
+                    ++start;
+            }
+        }
+        stagedLength -= start;                            // Keep the unfinished line for the next bytes
+        System.arraycopy(staged, start, staged, 0, stagedLength);
+        searched = stagedLength;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate a line and write it out. Empty lines are held back until a non-empty line
+     * follows them.
+     * @param line the bytes that hold the line
+     * @param start index of the first byte of the line
+     * @param end index one past the last byte of the line
+     * @throws IOException if writing fails
+     */
+    private void endLine(byte[] line, int start, int end) throws IOException {
+        if (start == end) {                               // Hold on to empty lines
+            ++emptyLines;
+            return;
+        }
+        translation.setLength(0);
+        for (; emptyLines > 0; --emptyLines)              // A sentence follows, so write the empty lines
+            translation.append(" \n");
+        boolean isAscii = TokenScanner.indexOfNonAscii(line, start, end) < 0;
+        int length = end - start;                         // Chars of the line
+        if (isAscii)                                      // The bytes are the chars
+            sentenceTranslator.translate(ascii.wrap(line, start, end), 0, length, translation);
+        else {                                            // Decode the line like a decoder would
+            String text = new String(line, start, length, StandardCharsets.UTF_8);
+            length = text.length();
+            sentenceTranslator.translate(text, 0, length, translation);
+        }
+        translation.append('\n');
+        if (TranslationMetrics.ENABLED) {
+            TranslationMetrics.line(length + 1, translation.length());
+            ++lines;
+            charsRead += length + 1;
+            charsWritten += translation.length();
+        }
+        if (!isAscii || !writeAscii(translation)) {
+            write(translation);
+            encode(false);                                // The line ends with '\n', so no char is left behind
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will narrow the chars of a translated line into bytes, which are the UTF-8 of the line if it
+     * is all ASCII
+     * @param text the translated line
+     * @return true if it was written, false if it has a char above 0x7F or is too long and must be encoded
+     * @throws IOException if writing fails
+     */
+    private boolean writeAscii(StringBuilder text) throws IOException {
+        int length = text.length();
+        if (length > encoded.capacity())
+            return false;
+        if (length > encoded.remaining())
+            stage();
+        if (chars.length < length)
+            chars = new char[text.capacity()];
+        text.getChars(0, length, chars, 0);
+        byte[] array = encoded.array();
+        int position = encoded.arrayOffset() + encoded.position();
+        int bits = 0;                                     // Every char or-ed together
+        for (int i = 0; i < length; ++i) {
+            char character = chars[i];
+            bits |= character;
+            array[position + i] = (byte) character;
+        }
+        if (bits > 0x7F)                                  // The bytes past the position get written over later
+            return false;
+        encoded.position(encoded.position() + length);
+        return true;
+    }
+
+    // *****************
+
+    /**
+     * This function will copy translated text into the output chars, encoding them whenever they fill up
+     * @param text the translated text
+     * @throws IOException if writing fails
+     */
+    private void write(StringBuilder text) throws IOException {
+        int start = 0;                                    // Start of the text still to copy
+
+        while (start < text.length()) {
+            if (!output.hasRemaining())
+                encode(false);
+            int end = Math.min(text.length(), start + output.remaining());
+            text.getChars(start, end, output.array(), output.arrayOffset() + output.position());
+            output.position(output.position() + end - start);
+            start = end;
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will encode the output chars into the byte buffer, staging the bytes whenever it fills up
+     * @param endOfInput true if no more chars will follow
+     * @throws IOException if writing fails
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        output.flip();
+        while (encoder.encode(output, encoded, endOfInput).isOverflow())
+            stage();
+        output.compact();
+    }
+
+    // *****************
+
+    /**
+     * This function will copy the encoded bytes into the direct buffer, writing the direct buffer out first if
+     * they don't fit
+     * @throws IOException if writing fails
+     */
+    private void stage() throws IOException {
+        encoded.flip();
+        if (encoded.remaining() > bytes.remaining())
+            drain();
+        bytes.put(encoded);
+        encoded.clear();
+    }
+
+    // *****************
+
+    /**
+     * This function will write everything in the direct buffer to the destination and make the buffer reusable
+     * @throws IOException if writing fails
+     */
+    private void drain() throws IOException {
+        long started = TranslationMetrics.ENABLED ? System.nanoTime() : 0;
+        bytes.flip();
+        while (bytes.hasRemaining())
+            out.write(bytes);
+        bytes.clear();
+        if (TranslationMetrics.ENABLED)
+            TranslationMetrics.record(TranslationMetrics.Stage.WRITE, started);
+    }
+
+    // *****************
+}
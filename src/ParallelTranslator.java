@@ -0,0 +1,184 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This translates text on several cores with fork/join. Lines are translated independently of each other, so the
+ * input is read in batches of whole lines, every batch is split in half until the pieces are small and the pieces
+ * are translated in parallel. Batches are written back in the order they were read, and only a few batches are in
+ * flight at once, so memory stays bounded no matter how big the input is.
+ */
+public class ParallelTranslator {
+    private static final int BATCH_CHARS = 1 << 18;    // Chars read into one batch before it is handed out
+    private static final int SPLIT_LINES = 256;        // Batches are split until a piece has this many lines or less
+
+    private final SentenceTranslator sentenceTranslator;     // Translates one line of text without its newline
+    private final ForkJoinPool pool;                         // Threads that do the translation
+    private final int maxBatches;                            // Batches that may be in flight at once
+
+    // *****************
+
+    /**
+     * The constructor that sets up the worker threads
+     * @param sentenceTranslator translates one line of text without its newline, it must be safe to call from
+     *                           several threads at once
+     * @param parallelism the number of threads that translate
+     */
+    public ParallelTranslator(SentenceTranslator sentenceTranslator, int parallelism) {
+        this.sentenceTranslator = sentenceTranslator;
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxBatches = 2 * parallelism + 1;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate text from the reader into the writer. Empty lines at the end of the text are
+     * dropped like the single threaded path does.
+     * @param in the reader to take the text from
+     * @param out the writer to put the translated text into
+     * @throws IOException if reading or writing fails
+     */
+    public void translate(BufferedReader in, Writer out) throws IOException {
+        ArrayDeque<Batch> inFlight = new ArrayDeque<>();   // Batches in the order they were read
+        int emptyLines = 0;                                  // Empty lines waiting for a non-empty line
+        Batch batch = readBatch(in);
+
+        try {
+            while (batch != null || !inFlight.isEmpty()) {
+                if (batch != null && inFlight.size() < maxBatches) {   // Keep the workers busy
+                    inFlight.add(batch);
+                    pool.execute(batch);
+                    batch = readBatch(in);
+                    continue;
+                }
+                Batch done = inFlight.remove();                         // Write the oldest batch once it's done
+                String text = done.join();
+                if (!text.isEmpty()) {
+                    for (; emptyLines > 0; --emptyLines)
+                        out.write(" \n");
+                    out.write(text);
+                    emptyLines = done.trailingEmptyLines;
+                } else
+                    emptyLines += done.trailingEmptyLines;
+            }
+        } finally {
+            for (Batch unfinished : inFlight)                 // Don't leave work behind if writing failed
+                unfinished.cancel(false);
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will stop the worker threads
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // *****************
+
+    /**
+     * This function will read whole lines until the batch is big enough or the text ends
+     * @param in the reader to take the text from
+     * @return the batch of lines, or null if the text has ended
+     * @throws IOException if reading fails
+     */
+    private Batch readBatch(BufferedReader in) throws IOException {
+        String[] lines = new String[64];      // Lines of the batch
+        int count = 0;                        // Number of lines read
+        int chars = 0;                        // Number of chars read
+        String line;
+
+        while (chars < BATCH_CHARS && (line = in.readLine()) != null) {
+            if (count == lines.length)
+                lines = Arrays.copyOf(lines, count * 2);
+            lines[count++] = line;
+            chars += line.length() + 1;
+        }
+        return count == 0 ? null : new Batch(lines, count);
+    }
+
+    // *****************
+
+    /**
+     * A batch of lines that is translated by the pool and joined into one block of text
+     */
+    private final class Batch extends RecursiveTask<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] lines;       // Lines read from the text, translated in place (null if empty)
+        private final int count;            // Number of lines in the batch
+        private int trailingEmptyLines;     // Empty lines at the end of the batch that were left out of the text
+
+        Batch(String[] lines, int count) {
+            this.lines = lines;
+            this.count = count;
+        }
+
+        @Override
+        protected String compute() {
+            new Lines(lines, 0, count).invoke();       // Translate the lines in parallel
+            StringBuilder text = new StringBuilder();  // Join the translated lines back in order
+            int last = count;                          // End of the lines that are not trailing empty lines
+
+            while (last > 0 && lines[last - 1] == null)
+                --last;
+            for (int i = 0; i < last; ++i) {
+                if (lines[i] == null)                  // Empty lines are translated to a single space
+                    text.append(' ');
+                else
+                    text.append(lines[i]);
+                text.append('\n');
+            }
+            trailingEmptyLines = count - last;
+            return text.toString();
+        }
+    }
+
+    // *****************
+
+    /**
+     * A range of lines that is split in half until it's small enough to translate on one thread
+     */
+    private final class Lines extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] lines;   // Lines to translate in place, empty lines become null
+        private final int start;        // First line of the range
+        private final int end;          // One past the last line of the range
+
+        Lines(String[] lines, int start, int end) {
+            this.lines = lines;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > SPLIT_LINES) {            // Too big, split it in half
+                int middle = (start + end) >>> 1;
+                invokeAll(new Lines(lines, start, middle), new Lines(lines, middle, end));
+                return;
+            }
+            StringBuilder translation = new StringBuilder();   // Small enough, translate it here
+            for (int i = start; i < end; ++i) {
+                if (lines[i].isEmpty()) {
+                    lines[i] = null;
+                    continue;
+                }
+                translation.setLength(0);
+                sentenceTranslator.translate(lines[i], 0, lines[i].length(), translation);
+                lines[i] = translation.toString();
+            }
+        }
+    }
+
+    // *****************
+}
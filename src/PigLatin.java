@@ -13,10 +13,55 @@
  *    - dest: This is the new file that the translated contents should be translated to. It will be
  *      saved as a .txt file.
  *    - action: "encode" into piglatin or "decode" piglatin.
+ *    - options (optional): "--io=stream" (default) reads and writes through a Reader/Writer in the platform
+ *      charset, "--io=nio" memory-maps the source and writes through a FileChannel in UTF-8. Lines that are all
+ *      ASCII are translated straight from their bytes, without decoding or encoding them.
+ *      "--parallel=N" translates on N threads with fork/join ("--parallel" uses every core).
+ *      "--batch" translates many files in one run: source is a directory (its .txt and .txt.gz files are
+ *      translated) or a glob such as "in/**.txt", and dest is the directory the translations are written to.
+ *      Files are translated concurrently with at most "--open-files=N" files open at once (64 by default), and
+ *      every file is reported as translated or failed instead of stopping at the first error.
+ *      Files ending in ".gz" are read and written gzip-compressed, decompressing and compressing on threads of
+ *      their own while the text is translated, without unpacking anything to disk. See GzipPipeline.
+ *      "--incremental" translates only what changed since the last translation into the same dest. A sidecar
+ *      index, "dest.index", keeps a hash of every block of lines, and the translation of every block that is still
+ *      in the source is copied from the old dest. See IncrementalTranslator.
+ *      "--keep-layout" rewrites only the words and copies the rest of the text as it is (runs of spaces, tabs,
+ *      "\r\n" line ends, empty lines), instead of writing every word followed by a single space. It takes
+ *      "--io=stream" only, and also works with "--filter" and when entering text manually.
+ *      "--columns=list" translates only some columns of a CSV file (a TSV file if it ends in ".tsv" or
+ *      ".tsv.gz") and copies the other fields as they are. The list holds header names, and then the first row is
+ *      copied as a header, or column numbers counting from 1. The file names are kept as they are, and it works
+ *      with "--parallel" and "--batch". See ColumnTranslator.
+ *      "--lines=first-last" (counting from 1) or "--bytes=from-to" translates only a slice of the source, seeking
+ *      straight to it through a line index kept next to the source ("source.lines") that is built the first time.
+ *      See LineIndex.
+ *      "--resume" writes the translation in chunks and saves a checkpoint next to the dest ("dest.checkpoint")
+ *      every few dozen MB, so a run that is killed can be run again and goes on from the last checkpoint. See
+ *      CheckpointedTranslator.
+ *      "--follow" translates the source and then keeps translating every line appended to it into the dest, like
+ *      "tail -f", until the program is stopped. The file names are kept as they are. See FollowTranslator.
+ *      "--markup" translates the prose of a Markdown (".md") or HTML (".html") file and copies its markup as it is:
+ *      tags and attributes, comments, character references, code blocks, code spans and link destinations. The
+ *      format comes from the extension, or from "--markup=markdown" or "--markup=html". The file names are kept as
+ *      they are, and it also works with "--batch" and "--filter". See MarkupTranslator.
  * 2. Manually entered: the program is run through command line with one argument:
  *    - action: "encode" into piglatin or "decode" piglatin.
  *    Then the user will be prompted to enter the desired text block they want to be translated.
+ *    - options (optional): "--filter" doesn't prompt. It reads stdin until it ends and writes the translation to
+ *      stdout as it goes, so the program can be used in a pipeline: cat big.txt | java PigLatin encode --filter.
  * 3. No arguments passed in: this will only output to the user how to run the program.
+ * 4. Server: the program is run with "--serve" (port 8080) or "--serve=port" and no other arguments. It keeps
+ *    the translator loaded and serves POST /encode, /decode, /batch/encode and /batch/decode over loopback HTTP
+ *    until it is stopped. See TranslationServer for the requests it takes.
+ * Any way of running the program takes "--dialect=rules" to pick the Pig Latin dialect, where rules is a comma
+ * separated list of "standard", "way" or "yay" (suffix of words starting with a vowel), "nohyphen" and "qu"
+ * (keep "qu" together), "--cache=N" to keep the translations of up to N words in an LRU cache, and "--metrics" to
+ * count and time every stage of the translation. The counters are reported when the program ends (on stderr with
+ * "--filter") and published over JMX and as JFR events while it runs. See TranslationMetrics.
+ * Decoding also takes "--lexicon=file", a word list or a compiled lexicon index, to pick the known word when a Pig
+ * Latin word can be decoded in more than one way. "--lexicon=words.txt --compile-lexicon=words.lex" with no other
+ * arguments compiles a word list into an index that later runs memory-map instead of building it again.
  *
  * List of exit codes:
  * - 1 : Successful exit
@@ -24,34 +69,72 @@
  * - 3 : file I/O errors
  **/
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Set;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class PigLatin {
 
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;   // Size of the file buffers used while streaming
+    private static final int DEFAULT_OPEN_FILES = 64;        // Most files a batch opens at once unless told otherwise
+    private static final int DEFAULT_PORT = 8080;            // Port the server listens on unless told otherwise
+    private static final long FOLLOW_POLL_MILLIS = 1000;     // Most time a followed file goes unchecked
+    private static final List<String> KNOWN_OPTIONS = Arrays.asList("io", "parallel", "dialect", "cache", "batch",
+            "open-files", "serve", "filter", "metrics", "lexicon", "compile-lexicon",
+            "incremental", "keep-layout", "columns", "lines", "bytes",
+            "resume", "follow", "markup");                  // Names of the supported "--" options
+    private static final Map<String, String> options = new HashMap<>();       // The "--name=value" options passed in
+
     // Main Function will translate an input text to/from Pig Latin.
     public static void main(String[] args){
 
-        // Declarations
-        Character vowelList[] = {'a', 'e', 'i', 'o', 'u', 'A', 'E', 'I', 'O', 'U'};  // Keeps track of all possible vowels
-        Set<Character> vowels = new HashSet<>(Arrays.asList(vowelList));
+        args = parseOptions(args);      // Take the "--" options out of the arguments
+        if(options.containsKey("metrics"))   // Must be set before anything loads TranslationMetrics
+            System.setProperty("piglatin.metrics", "true");
 
+        // Declarations
+        WordTranslator translator = new WordTranslator(getDialect(), getCacheCapacity(), getLexicon());
         // Check if missing command line args
-        if (args.length == 0) {         // The user doesn't know how to run the program
+        if (options.containsKey("compile-lexicon")) {   // The user wants to compile the word list into an index
+            compileLexicon(args, translator.lexicon());
+            System.exit(1);
+        } else if (options.containsKey("serve")) {   // The user wants to keep the translator running as a server
+            serve(args, translator);
+            return;                     // The server threads keep the program running
+        } else if (args.length == 0) {  // The user doesn't know how to run the program
             Rules();                    // Print out the rules and exit the program
             System.exit(1);
         } else if (args.length == 3) {  // The user wants to translate from file: source, dest, action
-            translateFromFile(args, vowels);
+            translateFromFile(args, translator);
+        } else if (args.length == 1 && options.containsKey("markup") && !options.containsKey("filter")) {
+            System.err.println("\"--markup\" translates a source file into a dest file, or stdin with \"--filter\".");
+            System.exit(2);
+        } else if (args.length == 1 && options.containsKey("columns")) {   // Columns are only read from files
+            System.err.println("\"--columns\" translates the columns of a source file into a dest file only.");
+            System.exit(2);
+        } else if (args.length == 1 && options.containsKey("filter")) {   // The user is piping text through: action
+            filterEntry(args, translator);
         } else if (args.length == 1) {  // The user wants to manually translate text: action
-            mannualEntry(args, vowels);
+            mannualEntry(args, translator);
         } else {                        // The user entered unsupported amount of arguments
             System.err.println("Invalid number of arguments passed in.");
             System.exit(2);
         }
 
         // Successful exit
+        if(translator.encodeCache() != null)       // Report how well the word caches did
+            System.out.println("\nWord cache: encode " + translator.encodeCache() + "; decode " +
+                    translator.decodeCache());
+        if(TranslationMetrics.ENABLED)             // Report the counters and timers of every stage
+            System.out.print("\n" + TranslationMetrics.report());
         System.out.println("\nYour input has been successfully translated!");
         System.exit(1);
 
@@ -76,16 +159,268 @@ public class PigLatin {
                 "saved as a .txt file.\n" +
                 "\t- action: \"encode\" into Pig Latin or \"decode\" Pig Latin.\n" +
                 "\t- EX: java PigLatin source.txt dest.txt encode\n" +
+                "\t- options: \"--io=stream\" (default) reads and writes through a Reader/Writer, \"--io=nio\" " +
+                "memory-maps the source and writes through a FileChannel in UTF-8. It is faster on very large files.\n" +
+                "\t- EX: java PigLatin source.txt dest.txt encode --io=nio\n" +
+                "\t- options: \"--parallel=N\" translates on N threads, \"--parallel\" uses every core.\n" +
+                "\t- EX: java PigLatin source.txt dest.txt encode --parallel=8\n" +
+                "\t- options: \"--batch\" translates many files at once. The source is a directory (its .txt and " +
+                ".txt.gz files are translated) or a glob such as \"in/**.txt\", and the dest is the directory to " +
+                "write to. " +
+                "\"--open-files=N\" limits how many files are open at once (default " + DEFAULT_OPEN_FILES + "). " +
+                "Every file is reported as translated or failed.\n" +
+                "\t- EX: java PigLatin \"in/*.txt\" out encode --batch --open-files=128\n" +
+                "\t- Sources and dests ending in \".gz\" are read and written gzip-compressed while they are " +
+                "translated, without unpacking them to disk.\n" +
+                "\t- EX: java PigLatin corpus.txt.gz corpus-pl.txt.gz encode\n" +
+                "\t- options: \"--incremental\" translates only the lines that changed since the last translation " +
+                "into the same dest and copies the rest from it. It keeps an index next to the dest (dest.index) and " +
+                "reads and writes UTF-8. It also works with \"--batch\".\n" +
+                "\t- EX: java PigLatin source.txt dest.txt encode --incremental\n" +
+                "\t- options: \"--keep-layout\" only rewrites the words and writes every space, tab, line end and " +
+                "empty line back as it was, instead of a single space after every word. It works with " +
+                "\"--io=stream\" and \"--filter\", and not with \"--parallel\" or \"--incremental\".\n" +
+                "\t- EX: java PigLatin source.txt dest.txt encode --keep-layout\n" +
+                "\t- options: \"--columns=list\" translates only the listed columns of a CSV file (tab separated " +
+                "if it ends in .tsv or .tsv.gz) and copies the other fields as they are. The list holds header " +
+                "names, which leave the first row as it is, or column numbers counting from 1. The file names are " +
+                "kept as they are. It works with \"--parallel\" and \"--batch\", and not with \"--io=nio\", " +
+                "\"--incremental\" or \"--keep-layout\".\n" +
+                "\t- EX: java PigLatin reviews.csv reviews-pl.csv encode --columns=title,body --parallel\n" +
+                "\t- options: \"--lines=first-last\" (counting from 1) or \"--bytes=from-to\" translates only " +
+                "the lines of a slice of the source, in UTF-8. The first time, an index of where the lines start " +
+                "is saved next to the source (source.lines), so later slices seek straight to their lines.\n" +
+                "\t- EX: java PigLatin huge.txt preview.txt encode --lines=5000000-5001000\n" +
+                "\t- options: \"--resume\" saves a checkpoint next to the dest (dest.checkpoint) as the " +
+                "translation goes, in UTF-8. If the run is stopped, running it again goes on from the last " +
+                "checkpoint instead of starting over. It also works with \"--batch\".\n" +
+                "\t- EX: java PigLatin huge.txt huge-pl.txt encode --resume\n" +
+                "\t- options: \"--follow\" translates the source, then waits for lines to be appended to it and " +
+                "appends their translation to the dest as soon as they are complete, like \"tail -f\", in UTF-8. " +
+                "The file names are kept as they are. Stop it with Ctrl+C.\n" +
+                "\t- EX: java PigLatin app.log app-pl.log encode --follow\n" +
+                "\t- options: \"--markup\" translates only the prose of a Markdown (.md) or HTML (.html) file and " +
+                "copies the markup as it is: tags, attributes, comments, character references, code blocks, code " +
+                "spans and link destinations. \"--markup=markdown\" or \"--markup=html\" picks the format of other " +
+                "files and of stdin with \"--filter\". The file names are kept as they are. It also works with " +
+                "\"--batch\".\n" +
+                "\t- EX: java PigLatin README.md README-pl.md encode --markup\n" +
                 "2. Manually entered: the program is run through command line with one argument:\n" +
                 "\t- action: \"encode\" into Pig Latin or \"decode\" Pig Latin.\n" +
                 "\t- EX: java PigLatin encode\n" +
                 "Then the user will be prompted to enter the desired text block they want to be translated.\n" +
-                "3. No arguments passed in: this will only output to the user how to run the program.";
+                "\t- options: \"--filter\" reads stdin until it ends and writes the translation to stdout without any " +
+                "prompt, for use in a pipeline.\n" +
+                "\t- EX: cat source.txt | java PigLatin encode --filter > dest.txt\n" +
+                "Both ways take \"--dialect=rules\" to pick a Pig Latin dialect. The rules are a comma separated list of " +
+                "\"standard\", \"way\" or \"yay\" (suffix of words starting with a vowel), \"nohyphen\" (no \"-\" before " +
+                "the moved consonants) and \"qu\" (keep \"qu\" together).\n" +
+                "\t- EX: java PigLatin source.txt dest.txt encode --dialect=way,nohyphen\n" +
+                "Both ways also take \"--cache=N\" to keep the translations of up to N words, so repeated words " +
+                "are not translated again.\n" +
+                "\t- EX: java PigLatin source.txt dest.txt encode --cache=10000\n" +
+                "Any way also takes \"--metrics\" to count and time every stage of the translation. The counters " +
+                "are printed at the end and published over JMX and as JFR events while the program runs.\n" +
+                "\t- EX: java PigLatin source.txt dest.txt encode --metrics\n" +
+                "Decoding takes \"--lexicon=file\", a word list or a compiled lexicon index, to pick the known word " +
+                "when a Pig Latin word can be decoded in more than one way, such as \"ingstray\" with " +
+                "\"--dialect=nohyphen\". \"--compile-lexicon=index\" with no other arguments compiles the word list " +
+                "into an index that loads without building it again.\n" +
+                "\t- EX: java PigLatin --lexicon=words.txt --compile-lexicon=words.lex\n" +
+                "\t- EX: java PigLatin source.txt dest.txt decode --dialect=nohyphen --lexicon=words.lex\n" +
+                "3. No arguments passed in: this will only output to the user how to run the program.\n" +
+                "4. Server: the program is run with \"--serve\" (port " + DEFAULT_PORT + ") or \"--serve=port\" " +
+                "and no other arguments. It translates the body of POST requests to /encode and /decode on " +
+                "127.0.0.1, and every line of the body on its own for /batch/encode and /batch/decode.\n" +
+                "\t- EX: java PigLatin --serve=8080 --cache=100000";
         System.out.println(rules);
     }
 
     // *****************
 
+    /**
+     * This function will pull the "--name=value" and "--name" options out of the program arguments and save them.
+     * If an option is not supported, exit with error message
+     * @param args The program arguments
+     * @return the arguments that are left once the options are taken out
+     */
+    private static String[] parseOptions(String[] args)
+    {
+        List<String> remaining = new ArrayList<>();      // Arguments that are not options
+
+        for(String arg : args) {
+            if(!arg.startsWith("--")) {                  // Not an option, keep it
+                remaining.add(arg);
+                continue;
+            }
+            int split = arg.indexOf('=');                // Options without a value are saved as ""
+            String name = split < 0 ? arg.substring(2) : arg.substring(2, split);
+            String value = split < 0 ? "" : arg.substring(split + 1);
+            if(!KNOWN_OPTIONS.contains(name)) {
+                System.err.println("Unknown option " + arg + ".");
+                System.exit(2);
+            }
+            options.put(name, value);
+        }
+        return remaining.toArray(new String[0]);
+    }
+
+    // *****************
+
+    /**
+     * @param name the name of the option
+     * @param defaultValue the value to use if the option was not passed in
+     * @return the value of the option
+     */
+    private static String getOption(String name, String defaultValue)
+    {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    // *****************
+
+    /**
+     * This function will compile the dialect picked with the "--dialect" option. If it is not valid, exit with
+     * error message
+     * @return the rules to translate with
+     */
+    private static Dialect getDialect()
+    {
+        try {
+            return Dialect.parse(getOption("dialect", "standard"));
+        } catch(IllegalArgumentException illegalArgumentException) {
+            System.err.println(illegalArgumentException.getMessage() + ". You can use \"standard\", \"way\", " +
+                    "\"yay\", \"nohyphen\" and \"qu\".");
+            System.exit(2);
+            return null;
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will start the translation server and leave it running. If the port is invalid or can't be
+     * bound, exit with error message
+     * @param args The program arguments, there must be none besides the options
+     * @param translator the translation core, shared by every request
+     */
+    private static void serve(String[] args, WordTranslator translator)
+    {
+        int port = DEFAULT_PORT;
+        TranslationServer server = null;
+
+        if(args.length != 0) {
+            System.err.println("The server takes no arguments besides the \"--\" options.");
+            System.exit(2);
+        }
+        try {
+            if(!getOption("serve", "").isEmpty())
+                port = Integer.parseInt(getOption("serve", ""));
+        } catch(NumberFormatException numberFormatException) {   // Caught by the range check below
+            port = -1;
+        }
+        if(port < 0 || port > 65535) {
+            System.err.println("Invalid port. \"--serve=port\" needs a port from 0 to 65535.");
+            System.exit(2);
+        }
+        try {                                              // Try to bind the port
+            server = new TranslationServer(translator, port, 4 * Runtime.getRuntime().availableProcessors());
+        } catch(IOException ioException) {
+            System.err.println("Unable to listen on port " + port + ": " + ioException.getMessage());
+            System.exit(3);
+        }
+        TranslationServer running = server;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {   // Finish the requests being handled on Ctrl-C
+            running.stop(1);
+            if(translator.encodeCache() != null)
+                System.out.println("Word cache: encode " + translator.encodeCache() + "; decode " +
+                        translator.decodeCache());
+            if(TranslationMetrics.ENABLED)
+                System.out.print(TranslationMetrics.report());
+        }));
+        server.start();
+        System.out.println("Serving Pig Latin on http://127.0.0.1:" + server.port() + "/ (POST /encode, /decode, " +
+                "/batch/encode, /batch/decode) on " + (VirtualThreads.available() ? "virtual threads" :
+                4 * Runtime.getRuntime().availableProcessors() + " threads") + ". Press Ctrl-C to stop.");
+    }
+
+    // *****************
+
+    /**
+     * This function will read the size of the word caches from the "--cache" option. If it is not a positive
+     * number, exit with error message
+     * @return most words cached for each direction, 0 if the option was not passed in
+     */
+    private static int getCacheCapacity()
+    {
+        if(!options.containsKey("cache"))                 // No cache unless asked for
+            return 0;
+        try {
+            int capacity = Integer.parseInt(getOption("cache", ""));
+            if(capacity > 0)
+                return capacity;
+        } catch(NumberFormatException numberFormatException) {   // Fall through to the error below
+        }
+        System.err.println("Invalid cache size. \"--cache=N\" needs a positive number of words.");
+        System.exit(2);
+        return 0;
+    }
+
+    // *****************
+
+    /**
+     * This function will load the known words picked with the "--lexicon" option. If it can't be read, exit with
+     * error message
+     * @return the known words, or null if there are none
+     */
+    private static Lexicon getLexicon()
+    {
+        if(!options.containsKey("lexicon"))               // Ambiguous words are guessed unless asked for
+            return null;
+        String file = getOption("lexicon", "");
+        if(file.isEmpty()) {
+            System.err.println("Missing lexicon. \"--lexicon=file\" needs a word list or a lexicon index.");
+            System.exit(2);
+        }
+        try {
+            return Lexicon.load(Paths.get(file));
+        } catch(NoSuchFileException noSuchFileException) {
+            System.err.println("The lexicon " + file + " was not found.");
+            System.exit(3);
+            return null;
+        } catch(IOException ioException) {
+            System.err.println("Unable to load the lexicon " + file + ": " + ioException.getMessage());
+            System.exit(3);
+            return null;
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will compile the word list of the "--lexicon" option into the index file of the
+     * "--compile-lexicon" option. If the arguments are not valid, exit with error message
+     * @param args The program arguments, there should be none
+     * @param lexicon the known words loaded from the word list
+     */
+    private static void compileLexicon(String[] args, Lexicon lexicon)
+    {
+        String index = getOption("compile-lexicon", "");
+        if(args.length != 0 || lexicon == null || index.isEmpty()) {
+            System.err.println("\"--compile-lexicon=index\" needs \"--lexicon=words\" and no other arguments.");
+            System.exit(2);
+        }
+        try {
+            lexicon.write(Paths.get(index));
+        } catch(IOException ioException) {
+            System.err.println("Unable to write the lexicon index " + index + ": " + ioException.getMessage());
+            System.exit(3);
+        }
+        System.out.println("Compiled " + lexicon + " into " + index + ".");
+    }
+
+    // *****************
+
     /**
      * This function will check if the user entered a valid action argument. If not, exit with error message
      * @param action the action the user would like to do (valid: "encode" or "decode")
@@ -101,13 +436,14 @@ public class PigLatin {
     // *****************
 
     /**
-     * Makes sure filename is a .txt file, if not, turn it into one
+     * Makes sure filename is a .txt file, if not, turn it into one. Gzip-compressed files (.gz) are left as they
+     * are
      * @param filename file to check/convert
-     * @return filename as .txt
+     * @return filename as .txt or .gz
      */
     private static String convertFilename(String filename)
     {
-        if(!filename.endsWith(".txt"))      // Make sure its a .txt file
+        if(!filename.endsWith(".txt") && !GzipPipeline.isCompressed(filename))   // Make sure its a .txt file
             filename = filename + ".txt";   // If not, turn it into one
         return filename;
     }
@@ -116,67 +452,429 @@ public class PigLatin {
 
     /**
      * This function will read input text from a source file and then translate into the desired file in the
-     * desired language.
+     * desired language. The text is streamed through line by line, so memory use does not depend on the size of
+     * the source file and the translation starts showing up in the destination file right away.
      * @param args The program arguments
-     * @param vowels List of vowel characters
+     * @param translator the translation core
+     */
+    private static void translateFromFile(String[] args, WordTranslator translator)
+    {
+        checkValidActionArgs(args[2]);                    // Check if valid action args
+        if(options.containsKey("batch")) {                // Many files into a directory
+            translateBatch(args, translator);
+            return;
+        }
+        String source = args[0];
+        String dest = args[1];
+        if(!options.containsKey("columns") && !options.containsKey("follow")
+                && !options.containsKey("markup")) {      // Make sure files are .txt
+            source = convertFilename(source);
+            dest = convertFilename(dest);
+        }
+        checkDistinctFiles(source, dest);                 // Streaming can't overwrite the file it is reading from
+        if(options.containsKey("markup"))                 // Only the prose of Markdown or HTML, before any other mode
+            checkMarkupOptions(source);
+
+        String io = getOption("io", "stream");            // How the files should be read and written
+        if(options.containsKey("lines") || options.containsKey("bytes")) {   // Only a slice of the source
+            translateSlice(source, dest, args[2], translator);
+            return;
+        }
+        if(options.containsKey("follow")) {               // Keeps translating what is appended to the source
+            follow(source, dest, args[2], translator);
+            return;
+        }
+        if(options.containsKey("resume")) {               // Picks up where an interrupted run left off
+            checkResumeOptions();
+            if(GzipPipeline.isCompressed(source) || GzipPipeline.isCompressed(dest)) {
+                System.err.println("A resumable translation can't go on from the middle of a compressed file.");
+                System.exit(2);
+            }
+            translateResumably(source, dest, args[2], translator);
+            return;
+        }
+        if(options.containsKey("columns")) {              // Only some columns of delimited text
+            translateColumns(source, dest, args[2], translator);
+            return;
+        }
+        if((GzipPipeline.isCompressed(source) || GzipPipeline.isCompressed(dest))
+                && (io.equals("nio") || options.containsKey("incremental"))) {
+            System.err.println("Compressed files work with \"--io=stream\" only, and not with \"--incremental\".");
+            System.exit(2);
+        }
+        if(options.containsKey("incremental")) {         // Only what changed since the last translation
+            if(options.containsKey("parallel") || options.containsKey("keep-layout")) {
+                System.err.println("Incremental translation doesn't take \"--parallel\" or \"--keep-layout\".");
+                System.exit(2);
+            }
+            translateIncrementally(source, dest, args[2], translator);
+            return;
+        }
+        if(io.equals("nio") && options.containsKey("parallel")) {
+            System.err.println("Parallel translation works with \"--io=stream\" only.");
+            System.exit(2);
+        }
+        if(options.containsKey("keep-layout") && (io.equals("nio") || options.containsKey("parallel"))) {
+            System.err.println("Keeping the layout works with \"--io=stream\" only, and not with \"--parallel\".");
+            System.exit(2);
+        }
+        if(io.equals("nio"))
+            translateWithNio(source, dest, args[2], translator);
+        else if(io.equals("stream"))
+            translateWithStream(source, dest, args[2], translator);
+        else {
+            System.err.println("Invalid I/O mode. You can use \"--io=stream\" or \"--io=nio\".");
+            System.exit(2);
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate every file of the batch into the destination directory. The result of every
+     * file is printed as soon as it is done, and a file that fails doesn't stop the others. If any file failed,
+     * exit with error message once the whole batch is done
+     * @param args The program arguments: the source directory or glob, the destination directory and the action
+     * @param translator the translation core
      */
-    private static void translateFromFile(String[] args, Set<Character> vowels)
+    private static void translateBatch(String[] args, WordTranslator translator)
     {
-        checkValidActionArgs(args[2]);       // Check if valid action args
-        String text = readFromFile(args[0]); // Read from input text file if so
-        if(args[2].equals("encode"))         // User wants to encode file
-            text = encode(text, vowels);
-        else                                 // Else user wants to decode file
-            text = decode(text, vowels);
-        writeToFile(args[1], text);          // Write translated text to file
+        String io = getOption("io", "stream");            // How the files should be read and written
+        if(options.containsKey("resume"))
+            checkResumeOptions();
+        if(options.containsKey("markup"))                 // The format of every file comes from its own extension
+            checkMarkupOptions(null);
+        if(options.containsKey("columns")) {              // Exits before any file if the columns are not valid
+            checkColumnOptions();
+            columnTranslator(args[0], args[2], translator, 1);
+        }
+        if(options.containsKey("parallel")) {
+            System.err.println("A batch already translates its files in parallel, so it doesn't take \"--parallel\".");
+            System.exit(2);
+        }
+        if(options.containsKey("lines") || options.containsKey("bytes") || options.containsKey("follow")) {
+            System.err.println("A batch translates whole files, so it doesn't take \"--lines\", \"--bytes\" or " +
+                    "\"--follow\".");
+            System.exit(2);
+        }
+        if(!io.equals("stream") && !io.equals("nio")) {
+            System.err.println("Invalid I/O mode. You can use \"--io=stream\" or \"--io=nio\".");
+            System.exit(2);
+        }
+        BatchTranslator batch = new BatchTranslator((source, dest) -> translateFile(source, dest, io, args[2],
+                translator), getOpenFiles());
+        List<BatchTranslator.Result> results = null;
+
+        try {                                             // Try to translate every file, reporting each one
+            results = batch.translate(args[0], Paths.get(args[1]), result -> {
+                if(result.succeeded())
+                    System.out.println("Translated " + result.source() + " into " + result.dest() + " (" +
+                            result.nanos() / 1_000_000 + " ms)");
+                else
+                    System.err.println("Unable to translate " + result.source() + " into " + result.dest() + ": " +
+                            result.error().getMessage());
+            });
+        } catch(IOException ioException) {               // The batch couldn't even start
+            System.err.println("Unable to translate " + args[0] + " into " + args[1] + ": " +
+                    ioException.getMessage());
+            System.exit(3);
+        }
+        if(results.isEmpty()) {
+            System.err.println("No files to translate were found in " + args[0] + ".");
+            System.exit(2);
+        }
+        long failed = results.stream().filter(result -> !result.succeeded()).count();
+        System.out.println("\n" + (results.size() - failed) + " of " + results.size() + " files translated.");
+        if(failed > 0) {
+            System.err.println("" + failed + " files failed. Translation failed.");
+            System.exit(3);
+        }
     }
 
     // *****************
 
     /**
-     * This function will read text to translate from file
-     * @param filename filename of file to read from
-     * @return Will return the text read from file
+     * This function will read the open file limit of a batch from the "--open-files" option. If it is less than
+     * 2, exit with error message
+     * @return the most files a batch opens at once
      */
-    private static String readFromFile(String filename)
+    private static int getOpenFiles()
     {
-        String text = "";
+        if(!options.containsKey("open-files"))
+            return DEFAULT_OPEN_FILES;
+        try {
+            int openFiles = Integer.parseInt(getOption("open-files", ""));
+            if(openFiles >= 2)
+                return openFiles;
+        } catch(NumberFormatException numberFormatException) {   // Fall through to the error below
+        }
+        System.err.println("Invalid open file limit. \"--open-files=N\" needs at least 2 files, a source and a " +
+                "destination.");
+        System.exit(2);
+        return 0;
+    }
 
-        filename = convertFilename(filename); // Make sure file is .txt
-        try {                                 // Try to read from file
-            BufferedReader in = new BufferedReader((new FileReader(filename))); // Create new BufferedReader Object
-            String line = in.readLine();                                        // Start reading file line by line
-            while(line != null) {                                               // Until we reach end of file
-                text = text + line + "\n";
-                line = in.readLine();
+    // *****************
+
+    /**
+     * This function will translate one file of a batch. Unlike the single file path it throws its errors, so the
+     * batch can report them and go on with the other files
+     * @param source file to read from
+     * @param dest file to write to
+     * @param io "stream" or "nio"
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     * @throws IOException if reading or writing fails
+     */
+    private static void translateFile(Path source, Path dest, String io, String action, WordTranslator translator)
+            throws IOException
+    {
+        boolean compressed = GzipPipeline.isCompressed(source.toString()) || GzipPipeline.isCompressed(dest.toString());
+        if(compressed && (io.equals("nio") || options.containsKey("incremental")))
+            throw new IOException("compressed files work with --io=stream only, and not with --incremental");
+        if(options.containsKey("keep-layout") && (io.equals("nio") || options.containsKey("incremental")))
+            throw new IOException("keeping the layout works with --io=stream only, and not with --incremental");
+        if(options.containsKey("markup") && getMarkupFormat(source.toString()) == null)
+            throw new IOException("neither Markdown nor HTML, pick the format with --markup=markdown or " +
+                    "--markup=html");
+        if(options.containsKey("resume")) {               // Every file has its own checkpoint
+            if(compressed)
+                throw new IOException("a resumable translation can't go on from the middle of a compressed file");
+            new CheckpointedTranslator(sentenceTranslator(action, translator), getSettings(action, translator))
+                    .translate(source, dest);
+            return;
+        }
+        if(options.containsKey("columns")) {              // One column translator per file, on this thread
+            try(BufferedReader in = new BufferedReader(new InputStreamReader(decompressed(source.toString(),
+                    Files.newInputStream(source))), STREAM_BUFFER_SIZE);
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(compressed(dest.toString(),
+                    Files.newOutputStream(dest))), STREAM_BUFFER_SIZE)) {
+                columnTranslator(source.toString(), action, translator, 1).translate(in, out);
+            } catch(IllegalArgumentException illegalArgumentException) {   // Not in the header, nothing was written
+                Files.deleteIfExists(dest);
+                throw new IOException(illegalArgumentException.getMessage());
             }
-            in.close();                                                         // End action
-        } catch(FileNotFoundException fileNotFoundException) {                  // Handle exception errors accordingly
-            System.err.println("" + filename + " was not found. Translation failed.");
+            return;
+        }
+        if(options.containsKey("incremental")) {         // The translator keeps buffers, so one per file
+            new IncrementalTranslator(sentenceTranslator(action, translator), getSettings(action, translator))
+                    .translate(source, dest);
+            return;
+        }
+        if(io.equals("nio")) {                            // The engine keeps buffers, so one per file
+            new NioFileEngine(sentenceTranslator(action, translator)).translate(source, dest);
+            return;
+        }
+        try(BufferedReader in = new BufferedReader(new InputStreamReader(decompressed(source.toString(),
+                Files.newInputStream(source))), STREAM_BUFFER_SIZE);
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(compressed(dest.toString(),
+                Files.newOutputStream(dest))), STREAM_BUFFER_SIZE)) {
+            translateText(in, out, action, translator, source.toString(), false);
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the source file into the destination file through a Reader and a Writer
+     * @param source filename of file to read from
+     * @param dest filename of file to write to
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     */
+    private static void translateWithStream(String source, String dest, String action, WordTranslator translator)
+    {
+        ParallelTranslator parallel = null;              // Translates on several threads if asked to
+
+        if(options.containsKey("parallel"))
+            parallel = new ParallelTranslator(sentenceTranslator(action, translator), getParallelism());
+        BufferedReader in = openSource(source);           // Open both ends of the stream
+        BufferedWriter out = openDest(dest);
+        try {                                             // Try to translate the file line by line
+            if(parallel != null)
+                parallel.translate(in, out);
+            else
+                translateText(in, out, action, translator, source, false);
+            in.close();                                   // End action
+            out.close();
+        } catch(IOException ioException) {                // Catch any IO exceptions and exit program if any
+            System.err.println("Unable to translate " + source + " into " + dest + ". Translation failed.");
+            System.exit(3);
+        } finally {
+            if(parallel != null)
+                parallel.shutdown();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate only the columns of the "--columns" option from the source file into the
+     * destination file, on several threads with "--parallel"
+     * @param source filename of file to read from
+     * @param dest filename of file to write to
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     */
+    private static void translateColumns(String source, String dest, String action, WordTranslator translator)
+    {
+        checkColumnOptions();
+        ColumnTranslator columns = columnTranslator(source, action, translator,
+                options.containsKey("parallel") ? getParallelism() : 1);
+        BufferedReader in = openSource(source);           // Open both ends of the stream
+        BufferedWriter out = openDest(dest);
+        try {                                             // Try to translate the file record by record
+            columns.translate(in, out);
+            in.close();                                   // End action
+            out.close();
+        } catch(IllegalArgumentException illegalArgumentException) {   // A column name is not in the header
+            try {                                         // Don't leave an empty dest behind
+                in.close();
+                out.close();
+                Files.deleteIfExists(Paths.get(dest));
+            } catch(IOException ioException) {            // The argument error is the one to report
+            }
+            System.err.println("Invalid columns: " + illegalArgumentException.getMessage() + " of " + source + ".");
+            System.exit(2);
+        } catch(IOException ioException) {                // Catch any IO exceptions and exit program if any
+            System.err.println("Unable to translate " + source + " into " + dest + ": " + ioException.getMessage() +
+                    ". Translation failed.");
+            System.exit(3);
+        } finally {
+            columns.shutdown();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the source file into the destination file and then go on translating the lines
+     * appended to the source until the program is stopped
+     * @param source filename of file to follow
+     * @param dest filename of file to write to
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     */
+    private static void follow(String source, String dest, String action, WordTranslator translator)
+    {
+        if(Arrays.asList("io", "parallel", "incremental", "keep-layout", "columns", "resume").stream()
+                .anyMatch(options::containsKey)
+                || GzipPipeline.isCompressed(source) || GzipPipeline.isCompressed(dest)) {
+            System.err.println("Following reads and writes uncompressed UTF-8 on its own, and doesn't take " +
+                    "\"--io\", \"--parallel\", \"--incremental\", \"--keep-layout\", \"--columns\" or " +
+                    "\"--resume\".");
+            System.exit(2);
+        }
+        FollowTranslator follower = new FollowTranslator(sentenceTranslator(action, translator), FOLLOW_POLL_MILLIS);
+
+        System.out.println("Following " + source + " into " + dest + ". Stop with Ctrl+C.");
+        try {                                             // Try to translate every line as it is appended
+            follower.follow(Paths.get(source), Paths.get(dest));
+        } catch(IOException ioException) {                // Catch any IO exceptions and exit program if any
+            System.err.println("Unable to follow " + source + " into " + dest + ": " + ioException.getMessage() +
+                    ". Translation failed.");
+            System.exit(3);
+        } catch(InterruptedException interruptedException) {   // Nothing interrupts it, but stop if something does
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate the source file into the destination file with checkpoints, going on from the
+     * checkpoint of an earlier run that was stopped, and print where it started
+     * @param source filename of file to read from
+     * @param dest filename of file to write to
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     */
+    private static void translateResumably(String source, String dest, String action, WordTranslator translator)
+    {
+        CheckpointedTranslator checkpointed = new CheckpointedTranslator(sentenceTranslator(action, translator),
+                getSettings(action, translator));
+
+        try {                                             // Try to translate what is left since the last checkpoint
+            CheckpointedTranslator.Result result = checkpointed.translate(Paths.get(source), Paths.get(dest));
+            System.out.println("Resumable: " + result + ".");
+        } catch(NoSuchFileException noSuchFileException) {  // Handle exception errors accordingly
+            System.err.println("" + source + " was not found. Translation failed.");
             System.exit(3);
         } catch(IOException ioException) {
-            System.err.println("Unable to read from " + filename + ". Translation failed.");
+            System.err.println("Unable to translate " + source + " into " + dest + ". Run it again to go on from " +
+                    "the last checkpoint. Translation failed.");
             System.exit(3);
         }
-        return text;    // Return input text read from file
     }
 
     // *****************
 
     /**
-     * This function will write the translated text to file
-     * @param filename filename of file to write to
-     * @param text text to write to file
+     * This function will make sure "--resume" comes with options it works with. If not, exit with error message
      */
-    private static void writeToFile(String filename, String text)
+    private static void checkResumeOptions()
     {
-        filename = convertFilename(filename); // Make sure file is .txt
-        try {                                 // Try to write to file
-            FileWriter fileWriter = new FileWriter(filename); // Create FileWriter Object
-            fileWriter.write(text);                           // Write translated text to file
-            fileWriter.close();                               // Complete action
-        } catch(IOException ioException) {                    // Catch any IO exceptions and exit program if any
-            System.err.println("Unable to write to " + filename + ".");
+        if(Arrays.asList("io", "parallel", "incremental", "keep-layout", "columns").stream()
+                .anyMatch(options::containsKey)) {
+            System.err.println("A resumable translation reads and writes UTF-8 on its own, and doesn't take " +
+                    "\"--io\", \"--parallel\", \"--incremental\", \"--keep-layout\" or \"--columns\".");
+            System.exit(2);
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate only the lines of the "--lines" or "--bytes" option from the source file into
+     * the destination file, through the line index of the source
+     * @param source filename of file to read from
+     * @param dest filename of file to write to
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     */
+    private static void translateSlice(String source, String dest, String action, WordTranslator translator)
+    {
+        if(options.containsKey("lines") && options.containsKey("bytes")
+                || Arrays.asList("io", "parallel", "incremental", "keep-layout", "columns", "resume", "follow")
+                        .stream().anyMatch(options::containsKey)
+                || GzipPipeline.isCompressed(source) || GzipPipeline.isCompressed(dest)) {
+            System.err.println("A slice is read from an uncompressed source with either \"--lines\" or " +
+                    "\"--bytes\", and doesn't take \"--io\", \"--parallel\", \"--incremental\", " +
+                    "\"--keep-layout\", \"--columns\", \"--resume\" or \"--follow\".");
+            System.exit(2);
+        }
+        boolean byLines = options.containsKey("lines");
+        long[] range = getRange(byLines ? "lines" : "bytes");
+        if(byLines ? range[0] < 1 || range[1] < range[0] : range[1] <= range[0]) {
+            System.err.println("Invalid range. \"--lines=first-last\" counts lines from 1 and includes the last " +
+                    "one, \"--bytes=from-to\" counts bytes from 0 and stops before to.");
+            System.exit(2);
+        }
+
+        LineIndex index = null;
+        try {                                             // Index the source before the dest is created
+            index = LineIndex.open(Paths.get(source));
+        } catch(NoSuchFileException noSuchFileException) {  // Handle exception errors accordingly
+            System.err.println("" + source + " was not found. Translation failed.");
+            System.exit(3);
+        } catch(IOException ioException) {
+            System.err.println("Unable to index the lines of " + source + ". Translation failed.");
+            System.exit(3);
+        }
+
+        try(BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dest),
+                StandardCharsets.UTF_8), STREAM_BUFFER_SIZE)) {   // Try to translate the lines of the slice
+            SentenceTranslator sentenceTranslator = sentenceTranslator(action, translator);
+            long lines = byLines ? index.translateLines(range[0], range[1], sentenceTranslator, out)
+                    : index.translateBytes(range[0], range[1], sentenceTranslator, out);
+            System.out.println("Translated " + lines + " of the " + index.lines() + " lines of " + source +
+                    (index.built() ? ", after indexing its lines into " + LineIndex.indexOf(Paths.get(source)) :
+                    "") + ".");
+        } catch(NoSuchFileException noSuchFileException) {  // Handle exception errors accordingly
+            System.err.println("" + source + " was not found. Translation failed.");
+            System.exit(3);
+        } catch(IOException ioException) {
+            System.err.println("Unable to translate " + source + " into " + dest + ". Translation failed.");
             System.exit(3);
         }
     }
@@ -184,235 +882,455 @@ public class PigLatin {
     // *****************
 
     /**
-     * This function will read in input text from the user manually and then encode/decode Pig Latin.
-     * @param args The program arguments
-     * @param vowels List of vowel characters
+     * This function will read a "--name=start-end" range option, or "--name=start" for a single line or byte. If it
+     * is not one or two numbers, exit with error message
+     * @param name the name of the option, "lines" or "bytes"
+     * @return the start and the end of the range
      */
-    private static void mannualEntry(String[] args, Set<Character> vowels)
+    private static long[] getRange(String name)
     {
-        String text = "";
+        String[] bounds = getOption(name, "").split("-", -1);
+        try {
+            if(bounds.length == 1) {
+                long start = Long.parseLong(bounds[0]);
+                return new long[] {start, name.equals("lines") ? start : start + 1};
+            }
+            if(bounds.length == 2)
+                return new long[] {Long.parseLong(bounds[0]), Long.parseLong(bounds[1])};
+        } catch(NumberFormatException numberFormatException) {   // Fall through to the error below
+        }
+        System.err.println("Invalid range. \"--" + name + "=start-end\" needs one or two numbers.");
+        System.exit(2);
+        return null;
+    }
 
-        checkValidActionArgs(args[0]);        // If valid action keyword
-        text = getText(args[0]);              // Then proceed to get input text from console
-        if(args[0].equals("encode"))          // User wants to encode text
-            text = encode(text, vowels);
-        else                                  // Else user wants to decode text
-            text = decode(text, vowels);
-        System.out.println("\nTranslation:"); // Output translation
-        System.out.println(text);
+    // *****************
+
+    /**
+     * This function will make sure "--markup" comes with options it works with and that the format of the text is
+     * known. If not, exit with error message
+     * @param filename name of the file to translate, or null if every file of a batch tells its own format
+     */
+    private static void checkMarkupOptions(String filename)
+    {
+        if(!getOption("io", "stream").equals("stream") || Arrays.asList("parallel", "incremental", "keep-layout",
+                "columns", "lines", "bytes", "resume", "follow").stream().anyMatch(options::containsKey)) {
+            System.err.println("Translating markup works with \"--io=stream\" only, and not with \"--parallel\", " +
+                    "\"--incremental\", \"--keep-layout\", \"--columns\", \"--lines\", \"--bytes\", " +
+                    "\"--resume\" or \"--follow\".");
+            System.exit(2);
+        }
+        MarkupTranslator.Format format = getMarkupFormat(filename);   // Exits if the option is not a format
+        if(filename != null && format == null) {
+            System.err.println("" + filename + " is neither Markdown (.md) nor HTML (.html). Pick the format with " +
+                    "\"--markup=markdown\" or \"--markup=html\".");
+            System.exit(2);
+        }
     }
 
     // *****************
 
     /**
-     * This function will read in input text from the user manually and encode/decode the text into Pig Latin.
-     * @param action that says to to encode or decode text
-     * @return Will return the text that was read in
+     * This function will read the markup format from the "--markup" option, or else from the extension of the file.
+     * If the option is not a known format, exit with error message
+     * @param filename name of the file to translate, or null for stdin
+     * @return the format of the text, or null if neither the option nor the file name tells it
      */
-    private static String getText(String action)
+    private static MarkupTranslator.Format getMarkupFormat(String filename)
     {
-        Scanner input = new Scanner(System.in);        // Utility to read input from command line
+        String value = getOption("markup", "");
+        if(value.equalsIgnoreCase("markdown") || value.equalsIgnoreCase("md"))
+            return MarkupTranslator.Format.MARKDOWN;
+        if(value.equalsIgnoreCase("html"))
+            return MarkupTranslator.Format.HTML;
+        if(!value.isEmpty()) {
+            System.err.println("Invalid markup format. You can use \"--markup=markdown\" or \"--markup=html\".");
+            System.exit(2);
+        }
+        return filename == null ? null : MarkupTranslator.Format.of(filename);
+    }
 
-        System.out.println("Text to " + action + " (Hit enter to finish):"); // Output prompt
-        return input.nextLine();                                             // Return input text
+    // *****************
+
+    /**
+     * This function will make sure "--columns" comes with options it works with. If not, exit with error message
+     */
+    private static void checkColumnOptions()
+    {
+        if(!getOption("io", "stream").equals("stream") || options.containsKey("incremental")
+                || options.containsKey("keep-layout")) {
+            System.err.println("Translating columns works with \"--io=stream\" only, and not with " +
+                    "\"--incremental\" or \"--keep-layout\".");
+            System.exit(2);
+        }
     }
 
     // *****************
 
     /**
-     * This function will encode input text into Pig Latin
-     * @param text
-     * @param vowels List of vowel characters
-     * @return the encoded text
+     * This function will make a translator for the columns of the "--columns" option. If the list is not valid,
+     * exit with error message
+     * @param source filename of file to read from, tab separated if it ends in ".tsv" or ".tsv.gz"
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     * @param parallelism the number of threads to translate on
+     * @return the translator of the columns
      */
-    private static String encode(String text, Set<Character> vowels)
+    private static ColumnTranslator columnTranslator(String source, String action, WordTranslator translator,
+                                                     int parallelism)
     {
-        String translation = "";                             // Translated text
-        String[] sentences = text.split("\n");        // Divide text into sentences
-        String[] words;                                      // Keeps track of words in a sentence
+        SentenceTranslator fieldTranslator = action.equals("encode") ? translator::encodeKeepingLayout
+                : translator::decodeKeepingLayout;
+        boolean tabs = ColumnTranslator.isTabSeparated(source);
+        try {
+            return new ColumnTranslator(fieldTranslator, tabs ? '\t' : ',', !tabs,
+                    Arrays.asList(getOption("columns", "").split(",", -1)), parallelism);
+        } catch(IllegalArgumentException illegalArgumentException) {
+            System.err.println("Invalid columns: " + illegalArgumentException.getMessage() + ". \"--columns=list\" " +
+                    "needs a comma separated list of column names or numbers counting from 1.");
+            System.exit(2);
+            return null;
+        }
+    }
 
-        for(String sentence : sentences) {                   // For each sentence in the text
-            words = sentence.split(" ");              // Separate sentence into words
-            for (String word : words) {                      // For all words in the sentence
-                if(!isSequenceOfSymbols(word)) {             // Don't edit if sequence of symbols and numbers only
-                    word = encodeWord(word, vowels);         // Encode the word
-                }
-                translation = translation + word + " ";      // Add encoded word to translated text
-            }
-            translation = translation + "\n";                // Add newline for next sentence
+    // *****************
+
+    /**
+     * This function will read the number of threads from the "--parallel" option. If it is not a positive number,
+     * exit with error message
+     * @return the number of threads to translate on
+     */
+    private static int getParallelism()
+    {
+        String value = getOption("parallel", "");         // "--parallel" without a number uses every core
+        if(value.isEmpty())
+            return Runtime.getRuntime().availableProcessors();
+        try {
+            int parallelism = Integer.parseInt(value);
+            if(parallelism > 0)
+                return parallelism;
+        } catch(NumberFormatException numberFormatException) {   // Fall through to the error below
         }
-        return translation;                                  // Return translated text
+        System.err.println("Invalid parallelism. \"--parallel=N\" needs a positive number of threads.");
+        System.exit(2);
+        return 0;
     }
 
     // *****************
 
     /**
-     * This function will encode a word into Pig Latin
-     * @param word the word to encode
-     * @param vowels list of vowels
-     * @return the encoded word as a String
+     * This function will translate the source file into the destination file through the memory-mapped NIO engine
+     * @param source filename of file to read from
+     * @param dest filename of file to write to
+     * @param action "encode" or "decode"
+     * @param translator the translation core
      */
-    private static String encodeWord(String word, Set<Character> vowels)
+    private static void translateWithNio(String source, String dest, String action, WordTranslator translator)
     {
-        String prefix = "";                    // Beginning consonants of a word
-        Word currentWord = new Word();         // Keeps track of the current word as a object of its parts
+        NioFileEngine engine = new NioFileEngine(sentenceTranslator(action, translator));
 
-        currentWord.separateWord(word);                                     // Separate the word into three parts: beginning symbols, core word, and ending symbols
-        if (!word.isEmpty() && vowels.contains(word.charAt(0)))             // If first character is a vowel
-            currentWord.setWord(currentWord.getWord() + "-ay");             // Then only append "-ay" to the end
-        else {                                                              // Otherwise
-            prefix = buildNormalPrefix(currentWord.getWord(), vowels);
-            // Remove the prefix from the beginning of the word
-            currentWord.setWord(currentWord.getWord().replaceFirst(prefix, ""));
-            //Alternative to using .replaceFirst() above: currentWord.setWord(word.shaveWord(word, prefix.length(), word.length()));
-            // Add prefix to the end of the word preceded by "-", and then add "ay" to the end
-            currentWord.setWord(currentWord.getWord() + "-" + prefix + "ay");
+        try {                                             // Try to translate the file line by line
+            engine.translate(Paths.get(source), Paths.get(dest));
+        } catch(NoSuchFileException noSuchFileException) {  // Handle exception errors accordingly
+            System.err.println("" + source + " was not found. Translation failed.");
+            System.exit(3);
+        } catch(IOException ioException) {
+            System.err.println("Unable to translate " + source + " into " + dest + ". Translation failed.");
+            System.exit(3);
         }
-        return currentWord.getWholeWord();     // Return the encoded word
     }
 
     // *****************
 
     /**
-     * This function will take a normal word and determine the prefix that will be moved to the end of the encoded word
-     * @param word the normal word excluding leading and ending symbols
-     * @param vowels list of vowel characters
-     * @return the prefix of the word that should be moved
+     * This function will translate only what changed in the source file since the last translation into the
+     * destination file, and print how much that was
+     * @param source filename of file to read from
+     * @param dest filename of file to write to
+     * @param action "encode" or "decode"
+     * @param translator the translation core
      */
-    private static String buildNormalPrefix(String word, Set<Character> vowels)
+    private static void translateIncrementally(String source, String dest, String action, WordTranslator translator)
     {
-        int wordIndex = 0;            // Index of a word
-        String prefix = "";           // Beginning consonants of a word
+        IncrementalTranslator incremental = new IncrementalTranslator(sentenceTranslator(action, translator),
+                getSettings(action, translator));
 
-        // While the first characters are not vowels
-        while (wordIndex < word.length() && (!vowels.contains(word.charAt(wordIndex)))) {
-            prefix = prefix + word.charAt(wordIndex);                   // Keep track of them
-            ++wordIndex;                                                // Update word iterator
+        try {                                             // Try to translate the blocks that changed
+            IncrementalTranslator.Result result = incremental.translate(Paths.get(source), Paths.get(dest));
+            System.out.println("Incremental: " + result + ", the rest was copied from " + dest + ".");
+        } catch(NoSuchFileException noSuchFileException) {  // Handle exception errors accordingly
+            System.err.println("" + source + " was not found. Translation failed.");
+            System.exit(3);
+        } catch(IOException ioException) {
+            System.err.println("Unable to translate " + source + " into " + dest + ". Translation failed.");
+            System.exit(3);
         }
-        // If "y" is the last of many characters in the prefix, remove it from prefix to preserve its original location
-        prefix = xyPrefix(prefix);
+    }
+
+    // *****************
 
-        return prefix;               // Return prefix
+    /**
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     * @return everything the translation of a line depends on, so a translation made with other settings is not
+     * reused
+     */
+    private static String getSettings(String action, WordTranslator translator)
+    {
+        return action + " " + getOption("dialect", "standard") + " " + getOption("lexicon", "") + " " +
+                translator.lexicon();
     }
+
     // *****************
 
     /**
-     * This function will decode input text from Pig Latin
-     * @param text
-     * @param vowels List of vowel characters
-     * @return the decoded text
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     * @return a function that translates one sentence in the direction of the action
      */
-    private static String decode(String text, Set<Character> vowels)
+    private static SentenceTranslator sentenceTranslator(String action, WordTranslator translator)
     {
-        String translation = "";                             // Translated text
-        String[] sentences = text.split("\n");        // Divide text into sentences
-        String[] words;                                      // Keeps track of words in a sentence
+        if(action.equals("encode"))
+            return translator::encodeSentence;
+        return translator::decodeSentence;
+    }
 
-        for(String sentence : sentences) {                   // For each sentence in the text
-            words = sentence.split(" ");              // Separate sentence into words
-            for (String word : words) {                      // For all words in the sentence
-                if(!isSequenceOfSymbols(word)) {             // Don't edit if sequence of symbols and numbers only
-                    word = decodeWord(word, vowels);         // Decode the word
-                }
-                translation = translation + word + " ";      // Add decoded word to translated text
+    // *****************
+
+    /**
+     * This function will translate everything the reader has into the writer, line by line, keeping the layout
+     * of the text if "--keep-layout" was passed in, or only its prose if "--markup" was
+     * @param in where the text to translate comes from
+     * @param out where the translated text goes
+     * @param action "encode" or "decode"
+     * @param translator the translation core
+     * @param filename name of the file the text comes from, or null for stdin
+     * @param flushWhenIdle true to flush the writer before waiting for more text
+     * @throws IOException if reading or writing fails
+     */
+    private static void translateText(BufferedReader in, Writer out, String action, WordTranslator translator,
+                                      String filename, boolean flushWhenIdle) throws IOException
+    {
+        if(options.containsKey("markup"))                 // The state of the document is kept across lines
+            new MarkupTranslator(action.equals("encode") ? translator::encodeKeepingLayout
+                    : translator::decodeKeepingLayout, getMarkupFormat(filename)).translate(in, out, flushWhenIdle);
+        else if(!options.containsKey("keep-layout"))
+            Translator.translateLines(in, out, sentenceTranslator(action, translator), flushWhenIdle);
+        else if(action.equals("encode"))
+            Translator.translateKeepingLayout(in, out, translator::encodeKeepingLayout, flushWhenIdle);
+        else
+            Translator.translateKeepingLayout(in, out, translator::decodeKeepingLayout, flushWhenIdle);
+    }
+
+    // *****************
+
+    /**
+     * This function will make sure the source and destination are not the same file. The source is read while the
+     * destination is being written, so writing over the source would destroy the text before it is translated.
+     * @param source filename of file to read from
+     * @param dest filename of file to write to
+     */
+    private static void checkDistinctFiles(String source, String dest)
+    {
+        try {
+            if(new File(source).getCanonicalFile().equals(new File(dest).getCanonicalFile())) {
+                System.err.println("The source and destination must be different files.");
+                System.exit(2);
             }
-            translation = translation + "\n";                // Add newline for the next sentence
+        } catch(IOException ioException) {               // Unable to resolve the paths
+            System.err.println("Unable to resolve " + source + " or " + dest + ". Translation failed.");
+            System.exit(3);
         }
-        return translation;                                  // Return translated text
     }
 
     // *****************
 
     /**
-     * This function will decode the Pig Latin word
-     * @param word the word in Pig Latin
-     * @param vowels list of vowels
-     * @return the decoded word as a String
+     * This function will open the source file to read text to translate from
+     * @param filename filename of file to read from
+     * @return Will return a buffered reader over the file
+     */
+    private static BufferedReader openSource(String filename)
+    {
+        BufferedReader in = null;
+
+        try {                                                                    // Try to open the file
+            in = new BufferedReader(new InputStreamReader(decompressed(filename, new FileInputStream(filename))),
+                    STREAM_BUFFER_SIZE);
+        } catch(FileNotFoundException fileNotFoundException) {                   // Handle exception errors accordingly
+            System.err.println("" + filename + " was not found. Translation failed.");
+            System.exit(3);
+        }
+        return in;    // Return reader over the source file
+    }
+
+    // *****************
+
+    /**
+     * This function will open the destination file to write the translated text to
+     * @param filename filename of file to write to
+     * @return Will return a buffered writer over the file
      */
-    private static String decodeWord(String word, Set<Character> vowels)
+    private static BufferedWriter openDest(String filename)
     {
-        String prefix = "";                    // Beginning consonants of a word
-        Word currentWord = new Word();         // Keeps track of the current word as a object of its parts
+        BufferedWriter out = null;
 
-        currentWord.separateWord(word);                                              // Separate the word into three parts: beginning symbols, core word, and ending symbols
-        if (currentWord.getWord().endsWith("-ay"))                                   // Word end in "-ay"
-            currentWord.setWord(currentWord.getWord().replaceFirst("-ay", ""));    // Get rid of "-ay" ending
-        else if (currentWord.getWord().endsWith("ay"))                                                // Word ends in "ay"
-        {
-            prefix = buildPigLatinPrefix(currentWord.getWord(), vowels);                              // Get the prefix of the normal word from Pig Latin word's suffix
-            String suffix = "-" + prefix + "ay";                                                      // Suffix to remove is "-" + prefix + "ay"
-            currentWord.setWord(currentWord.getWord().replaceFirst(suffix, ""));          // Remove suffix
-            currentWord.setWord(prefix + currentWord.getWord());                                      // Put prefix back to beginning and add punctuation back to end
+        try {                                                                    // Try to create the file
+            out = new BufferedWriter(new OutputStreamWriter(compressed(filename, new FileOutputStream(filename))),
+                    STREAM_BUFFER_SIZE);
+        } catch(IOException ioException) {                                       // Catch any IO exceptions and exit program if any
+            System.err.println("Unable to write to " + filename + ".");
+            System.exit(3);
         }
+        return out;   // Return writer over the destination file
+    }
 
-        return currentWord.getWholeWord();        // Return decoded word
+    // *****************
+
+    /**
+     * @param filename name of the file the stream reads
+     * @param in the bytes of the file
+     * @return the bytes decompressed as they are read if the file is gzip-compressed, or else the bytes as they are
+     */
+    private static InputStream decompressed(String filename, InputStream in)
+    {
+        return GzipPipeline.isCompressed(filename) ? GzipPipeline.decompress(in) : in;
     }
 
     // *****************
 
     /**
-     * This function will take the Pig Latin word and determine the prefix of the normal word based on its suffix.
-     * @param word the word in Pig Latin
-     * @param vowels list of vowels
-     * @return the prefix
+     * @param filename name of the file the stream writes
+     * @param out where the bytes of the file go
+     * @return a stream that compresses the bytes as they are written if the file is gzip-compressed, or else the
+     * stream as it is
      */
-    private static String buildPigLatinPrefix(String word, Set<Character> vowels)
+    private static OutputStream compressed(String filename, OutputStream out)
     {
-        int wordIndex = 0;                     // Index of a word
-        String prefix = "";                    // Beginning consonants of a word
-        int lastIndex = word.length() - 1;                        // The last index of the word
-        if(!word.contains("-"))                                   // If there is no "-" in the word, it is not a Pig-Latin word
-            return prefix;
-        wordIndex = word.lastIndexOf("-", lastIndex) + 1;    // Find location of "-" for the added prefix and move over to the right one index
-        if(word.equals("may"))
-            System.out.println(wordIndex);
-        // While the first characters are consonants
-        while ((wordIndex < word.length()) && (!vowels.contains(word.charAt(wordIndex)))) {
-            prefix = prefix + word.charAt(wordIndex);            // Keep track of them
-            ++wordIndex;                                         // Update iterator
+        return GzipPipeline.isCompressed(filename) ? GzipPipeline.compress(out) : out;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate stdin into stdout until stdin ends, without any prompt, so the program works
+     * as a filter in a pipeline. The output is written in big blocks while text keeps coming in and flushed as
+     * soon as stdin has to be waited on. Then exit, since a success message would end up in the output
+     * @param args The program arguments
+     * @param translator the translation core
+     */
+    private static void filterEntry(String[] args, WordTranslator translator)
+    {
+        checkValidActionArgs(args[0]);        // If valid action keyword
+        if(options.containsKey("markup"))
+            checkMarkupOptions(null);
+        if(options.containsKey("markup") && getMarkupFormat(null) == null) {   // Stdin has no extension to go by
+            System.err.println("With \"--filter\", pick the markup format with \"--markup=markdown\" or " +
+                    "\"--markup=html\".");
+            System.exit(2);
         }
-        return prefix;                                           // Return prefix
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(FileDescriptor.in)),
+                STREAM_BUFFER_SIZE);          // Skip System.in and System.out, they lock and flush on every line
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)),
+                STREAM_BUFFER_SIZE);
+
+        try {                                 // Try to translate stdin line by line
+            translateText(in, out, args[0], translator, null, true);
+            out.flush();
+        } catch(IOException ioException) {    // Catch any IO exceptions and exit program if any
+            System.err.println("Unable to translate stdin into stdout: " + ioException.getMessage());
+            System.exit(3);
+        }
+        if(translator.encodeCache() != null)  // Report how well the word caches did, away from the output
+            System.err.println("Word cache: encode " + translator.encodeCache() + "; decode " +
+                    translator.decodeCache());
+        if(TranslationMetrics.ENABLED)
+            System.err.print(TranslationMetrics.report());
+        System.exit(1);
     }
 
     // *****************
 
     /**
-     * This function will check if the word is actually a sequence of symbols and numbers, which should be ignored
-     * in the translations.
-     * @param word to check
-     * @return true if it's a sequence of symbols and numbers, false otherwise
+     * This function will read in input text from the user manually and then encode/decode Pig Latin.
+     * @param args The program arguments
+     * @param translator the translation core
      */
-    private static boolean isSequenceOfSymbols(String word)
+    private static void mannualEntry(String[] args, WordTranslator translator)
     {
-        //For every character in the word
-        for(char character : word.toCharArray()) {
-            // If a character is not a symbol or number, return false
-            if (!(character >= 33 && character <= 64) && !(character >= 91 && character <= 96) && !(character >= 123 && character <= 126))
-                return false;
+        String text = "";
+
+        checkValidActionArgs(args[0]);        // If valid action keyword
+        text = getText(args[0]);              // Then proceed to get input text from console
+        if(args[0].equals("encode"))          // User wants to encode text
+            text = encode(text, translator);
+        else                                  // Else user wants to decode text
+            text = decode(text, translator);
+        System.out.println("\nTranslation:"); // Output translation
+        System.out.println(text);
+    }
+
+    // *****************
+
+    /**
+     * This function will read in input text from the user manually and encode/decode the text into Pig Latin.
+     * @param action that says to to encode or decode text
+     * @return Will return the text that was read in
+     */
+    private static String getText(String action)
+    {
+        Scanner input = new Scanner(System.in);        // Utility to read input from command line
+
+        System.out.println("Text to " + action + " (Hit enter to finish):"); // Output prompt
+        return input.nextLine();                                             // Return input text
+    }
+
+    // *****************
+
+    /**
+     * This function will encode input text into Pig Latin
+     * @param text
+     * @param translator the translation core
+     * @return the encoded text
+     */
+    private static String encode(String text, WordTranslator translator)
+    {
+        StringBuilder translation = new StringBuilder();     // Translated text
+        if(options.containsKey("keep-layout")) {             // Only the words change
+            translator.encodeKeepingLayout(text, 0, text.length(), translation);
+            return translation.toString();
         }
-        return true;    // Otherwise, return true, it is a sequence of symbols and numbers
+        String[] sentences = text.split("\n");        // Divide text into sentences
+
+        for(String sentence : sentences) {                   // For each sentence in the text
+            translator.encodeSentence(sentence, 0, sentence.length(), translation);
+            translation.append("\n");                        // Add newline for next sentence
+        }
+        return translation.toString();                       // Return translated text
     }
 
     // *****************
 
     /**
-     * This will evaluate to see if the prefix of size greater than 1 char has a y as the last character.
-     * If so, it will not take that y. This is to preserve pig latin rules. i.e. my is y-may not -myay.
-     * @param prefix the prefix whe need to check and modify if needed
-     * @return the correct prefix value
+     * This function will decode input text from Pig Latin
+     * @param text
+     * @param translator the translation core
+     * @return the decoded text
      */
-    private static String xyPrefix(String prefix)
+    private static String decode(String text, WordTranslator translator)
     {
-        int len = prefix.length();            // Length of prefix
-        String newPrefix = "";                // New prefix without ending y/Y
+        StringBuilder translation = new StringBuilder();     // Translated text
+        if(options.containsKey("keep-layout")) {             // Only the words change
+            translator.decodeKeepingLayout(text, 0, text.length(), translation);
+            return translation.toString();
+        }
+        String[] sentences = text.split("\n");        // Divide text into sentences
 
-        if(len > 1 && (prefix.endsWith("y") || prefix.endsWith("Y"))) {   // If prefix ends with y/Y but is not just the y/Y as a whole
-            for(int i = 0; i < (len - 1); ++i)                            // Copy everything except for that ending y/Y char
-                newPrefix = newPrefix + prefix.charAt(i);                 // This is to preserve a pig latin case
+        for(String sentence : sentences) {                   // For each sentence in the text
+            translator.decodeSentence(sentence, 0, sentence.length(), translation);
+            translation.append("\n");                        // Add newline for the next sentence
         }
-        else
-            return prefix;                                                // Else, return original prefix
-        return newPrefix;                                                 // Return the corrected prefix string
+        return translation.toString();                       // Return translated text
     }
 
     // *****************
@@ -0,0 +1,16 @@
+/**
+ * Translates one line of text, without its newline, and appends the translation to an output buffer.
+ * WordTranslator::encodeSentence and WordTranslator::decodeSentence are the usual implementations.
+ */
+@FunctionalInterface
+public interface SentenceTranslator {
+
+    /**
+     * This function will translate the sentence between start and end and append it to the output
+     * @param text the text that holds the sentence
+     * @param start index of the first char of the sentence
+     * @param end index one past the last char of the sentence
+     * @param out the buffer to append the translation to
+     */
+    void translate(CharSequence text, int start, int end, StringBuilder out);
+}
@@ -0,0 +1,156 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the boundaries of tokens (spaces, line ends and non-ASCII bytes) a whole block at a time instead of one
+ * char at a time.
+ * - Text held in a String is searched with String.indexOf, which the JIT turns into SIMD instructions (SSE or
+ *   AVX on x86, NEON on ARM) when the CPU has them and into a plain loop when it doesn't. String.indexOf can't be
+ *   told where to stop, so it is only used when the range ends the String or the char is right after the range.
+ * - ASCII bytes shown as chars by AsciiBytes are searched as the bytes they are.
+ * - Bytes are searched 8 at a time in a long, with the SIMD-within-a-register tricks for finding a byte: every
+ *   byte of the long is compared at once with a few arithmetic operations and no branches.
+ * Any other CharSequence is searched one char at a time.
+ */
+public final class TokenScanner {
+    private static final long ONES = 0x0101010101010101L;       // 0x01 in every byte
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;   // All but the high bit of every byte
+    private static final long HIGH_BITS = 0x8080808080808080L;  // The high bit of every byte
+    private static final long CONTROL_BLOCK = 0xF8F8F8F8F8F8F8F8L;   // Bits that are the same from 0x08 to 0x0F
+
+    // *****************
+
+    private TokenScanner() {
+    }
+
+    // *****************
+
+    /**
+     * This function will find the first copy of a char in a range of text
+     * @param text the text to search
+     * @param from index of the first char to search
+     * @param to index one past the last char to search
+     * @param character the char to find
+     * @return the index of the char, or -1 if it is not in the range
+     */
+    public static int indexOf(CharSequence text, int from, int to, char character) {
+        if (text instanceof String && (to == text.length() || text.charAt(to) == character)) {
+            int index = ((String) text).indexOf(character, from);   // The JIT intrinsic, a block at a time. It
+            return index < to ? index : -1;                          // can't search past the range by much
+        }
+        if (text instanceof AsciiBytes)                  // Bytes under the chars, searched 8 at a time
+            return ((AsciiBytes) text).indexOf(from, to, character);
+        for (int i = from; i < to; ++i) {
+            if (text.charAt(i) == character)
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * This function will find the first copy of a byte in a range of bytes, 8 bytes at a time
+     * @param bytes the bytes to search
+     * @param from index of the first byte to search
+     * @param to index one past the last byte to search
+     * @param value the byte to find
+     * @return the index of the byte, or -1 if it is not in the range
+     */
+    public static int indexOf(byte[] bytes, int from, int to, byte value) {
+        long pattern = (value & 0xFFL) * ONES;           // The byte in every byte of a long
+        int i = from;
+
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long found = zeroBytes((long) Longs.VIEW.get(bytes, i) ^ pattern);
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < to; ++i) {                            // The last few bytes
+            if (bytes[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * This function will find the first line end, "\n" or "\r", in a range of bytes, 8 bytes at a time. Both are
+     * in the block of bytes from 0x08 to 0x0F, so a single test finds them along with a few other control chars
+     * such as tabs, which are then told apart one by one
+     * @param bytes the bytes to search
+     * @param from index of the first byte to search
+     * @param to index one past the last byte to search
+     * @return the index of the line end, or -1 if there is none in the range
+     */
+    public static int indexOfLineEnd(byte[] bytes, int from, int to) {
+        int i = from;
+
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long found = zeroBytes(((long) Longs.VIEW.get(bytes, i) & CONTROL_BLOCK) ^ (0x08 * ONES));
+            while (found != 0) {                         // A byte from 0x08 to 0x0F, "\n", "\r" or a rare tab
+                int index = i + (Long.numberOfTrailingZeros(found) >>> 3);
+                if (bytes[index] == '\n' || bytes[index] == '\r')
+                    return index;
+                found &= found - 1;
+            }
+        }
+        for (; i < to; ++i) {                            // The last few bytes
+            if (bytes[i] == '\n' || bytes[i] == '\r')
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * This function will find the first byte that is not ASCII, which starts or continues a multi-byte UTF-8
+     * sequence, in a range of bytes, 8 bytes at a time
+     * @param bytes the bytes to search
+     * @param from index of the first byte to search
+     * @param to index one past the last byte to search
+     * @return the index of the byte, or -1 if the range is all ASCII
+     */
+    public static int indexOfNonAscii(byte[] bytes, int from, int to) {
+        int i = from;
+
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long found = (long) Longs.VIEW.get(bytes, i) & HIGH_BITS;
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < to; ++i) {                            // The last few bytes
+            if (bytes[i] < 0)
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * @return a long with the high bit set in exactly the bytes of the word that are zero. Adding 0x7F to the low
+     * bits of a byte carries into its high bit unless they are all zero, and or-ing the byte itself in catches the
+     * bytes whose high bit was set already, so unlike the shorter tricks no byte next to a zero is flagged
+     */
+    private static long zeroBytes(long word) {
+        return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+    }
+
+    // *****************
+
+    /**
+     * Holds the view of byte arrays as longs. Making it spins up a few classes of java.lang.invoke, so it is only
+     * made once bytes are searched for the first time, and text that is only ever searched as chars never pays
+     * for it
+     */
+    private static final class Longs {
+        static final VarHandle VIEW = MethodHandles.byteArrayViewVarHandle(long[].class,
+                ByteOrder.LITTLE_ENDIAN);                // Reads 8 bytes of an array as a long, first byte lowest
+    }
+
+    // *****************
+}
@@ -0,0 +1,322 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of the translation hot path. Instrumentation is off unless the JVM is started with
+ * -Dpiglatin.metrics=true (the "--metrics" option of PigLatin sets it). ENABLED is a static final constant, so
+ * when it is off the JIT removes every "if (TranslationMetrics.ENABLED)" block and the hot path costs the same as
+ * without any instrumentation.
+ * When it is on, every stage keeps a count, a total and a latency histogram with a bucket for every power of two
+ * nanoseconds:
+ * - READ: reading one line of text, or one block of bytes for the NIO engine.
+ * - SENTENCE: splitting one line into words and translating them.
+ * - WORD: translating one word, symbol-only tokens are counted but not translated.
+ * - WRITE: writing one translated line, or one block of bytes for the NIO engine.
+ * The counters are published over JMX as PigLatin:type=TranslationMetrics and PigLatin:type=Stage,name=stage, and
+ * as JFR events: a TranslationEvent for every text streamed through and a ThroughputEvent every second.
+ */
+public final class TranslationMetrics {
+    /** True if the hot path is instrumented */
+    public static final boolean ENABLED = Boolean.getBoolean("piglatin.metrics");
+
+    /**
+     * The stages of the hot path that are timed
+     */
+    public enum Stage { READ, SENTENCE, WORD, WRITE }
+
+    static {
+        if (ENABLED)
+            publish();
+    }
+
+    // *****************
+
+    private TranslationMetrics() {
+    }
+
+    // *****************
+
+    /**
+     * This function will add the time since the start to the stage. Only call it if ENABLED
+     * @param stage the stage that was timed
+     * @param start System.nanoTime() when the stage started
+     */
+    public static void record(Stage stage, long start) {
+        Totals.timers[stage.ordinal()].add(System.nanoTime() - start);
+    }
+
+    // *****************
+
+    /**
+     * This function will count a translated line and the chars read and written for it. Only call it if ENABLED
+     * @param read chars of the line read, its newline included
+     * @param written chars of the translation written
+     */
+    public static void line(long read, long written) {
+        Totals.lines.increment();
+        Totals.charsRead.add(read);
+        Totals.charsWritten.add(written);
+    }
+
+    // *****************
+
+    /**
+     * This function will count a word that was translated. Only call it if ENABLED
+     */
+    public static void word() {
+        Totals.words.increment();
+    }
+
+    // *****************
+
+    /**
+     * This function will count a token of symbols and numbers only, which is copied as it is. Only call it if
+     * ENABLED
+     */
+    public static void symbolToken() {
+        Totals.symbolTokens.increment();
+    }
+
+    // *****************
+
+    /**
+     * @return a report of every counter and timer, one per line
+     */
+    public static String report() {
+        double seconds = secondsSinceStart();
+        StringBuilder report = new StringBuilder();
+
+        long lines = Totals.lines.sum();
+        long words = Totals.words.sum();
+        long charsRead = Totals.charsRead.sum();
+        long charsWritten = Totals.charsWritten.sum();
+
+        report.append(String.format(Locale.ROOT, "Lines: %d (%.0f/s), words: %d (%.0f/s), symbol-only tokens: %d, " +
+                        "chars read: %d (%.0f/s), chars written: %d (%.0f/s)%n", lines, lines / seconds, words,
+                words / seconds, Totals.symbolTokens.sum(), charsRead, charsRead / seconds, charsWritten,
+                charsWritten / seconds));
+        for (Stage stage : Stage.values()) {
+            Timer timer = Totals.timers[stage.ordinal()];
+            report.append(String.format(Locale.ROOT, "%-8s count %d, total %.1f ms, mean %.0f ns, p50 %d ns, " +
+                            "p99 %d ns, max %d ns%n", stage.name().toLowerCase(Locale.ROOT), timer.getCount(),
+                    timer.getTotalNanos() / 1e6, timer.getMeanNanos(), timer.getP50Nanos(), timer.getP99Nanos(),
+                    timer.getMaxNanos()));
+        }
+        return report.toString();
+    }
+
+    // *****************
+
+    /**
+     * @return the seconds since the counters started, never 0
+     */
+    private static double secondsSinceStart() {
+        return Math.max(1, System.nanoTime() - Totals.startNanos) / 1e9;
+    }
+
+    // *****************
+
+    /**
+     * This function will register the MBeans and the periodic JFR event. Failing to do so doesn't stop
+     * translating, the counters are still kept and reported
+     */
+    private static void publish() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new StandardMBean(new Counters(), CountersMBean.class),
+                    new ObjectName("PigLatin:type=TranslationMetrics"));
+            for (Stage stage : Stage.values())
+                server.registerMBean(new StandardMBean(Totals.timers[stage.ordinal()], TimerMBean.class),
+                        new ObjectName("PigLatin:type=Stage,name=" + stage.name().toLowerCase(Locale.ROOT)));
+        } catch (JMException jmException) {
+            System.err.println("Unable to publish the translation metrics over JMX: " + jmException.getMessage());
+        }
+        FlightRecorder.addPeriodicEvent(ThroughputEvent.class, () -> {
+            ThroughputEvent event = new ThroughputEvent();
+            event.lines = Totals.lines.sum();
+            event.words = Totals.words.sum();
+            event.symbolTokens = Totals.symbolTokens.sum();
+            event.charsRead = Totals.charsRead.sum();
+            event.charsWritten = Totals.charsWritten.sum();
+            event.commit();
+        });
+    }
+
+    // *****************
+
+    /**
+     * The counters and timers. They are only built the first time one of them is used, so a run without metrics
+     * that merely reads ENABLED doesn't pay for them at startup
+     */
+    private static final class Totals {
+        static final LongAdder lines = new LongAdder();          // Lines translated
+        static final LongAdder words = new LongAdder();          // Words translated
+        static final LongAdder symbolTokens = new LongAdder();   // Tokens of symbols and numbers only, skipped
+        static final LongAdder charsRead = new LongAdder();      // Chars of text read
+        static final LongAdder charsWritten = new LongAdder();   // Chars of translated text written
+        static final Timer[] timers = new Timer[Stage.values().length];
+        static final long startNanos = System.nanoTime();        // When the counters started
+
+        static {
+            for (Stage stage : Stage.values())
+                timers[stage.ordinal()] = new Timer();
+        }
+    }
+
+    // *****************
+
+    /**
+     * The throughput counters as seen over JMX
+     */
+    public interface CountersMBean {
+        long getLines();
+        long getWords();
+        long getSymbolTokens();
+        long getCharsRead();
+        long getCharsWritten();
+        double getLinesPerSecond();
+        double getWordsPerSecond();
+        double getCharsReadPerSecond();
+        double getCharsWrittenPerSecond();
+    }
+
+    // *****************
+
+    /**
+     * The timer of one stage as seen over JMX
+     */
+    public interface TimerMBean {
+        long getCount();
+        long getTotalNanos();
+        double getMeanNanos();
+        long getP50Nanos();
+        long getP90Nanos();
+        long getP99Nanos();
+        long getMaxNanos();
+    }
+
+    // *****************
+
+    /**
+     * Reads the throughput counters for JMX
+     */
+    private static final class Counters implements CountersMBean {
+        public long getLines() { return Totals.lines.sum(); }
+        public long getWords() { return Totals.words.sum(); }
+        public long getSymbolTokens() { return Totals.symbolTokens.sum(); }
+        public long getCharsRead() { return Totals.charsRead.sum(); }
+        public long getCharsWritten() { return Totals.charsWritten.sum(); }
+        public double getLinesPerSecond() { return Totals.lines.sum() / secondsSinceStart(); }
+        public double getWordsPerSecond() { return Totals.words.sum() / secondsSinceStart(); }
+        public double getCharsReadPerSecond() { return Totals.charsRead.sum() / secondsSinceStart(); }
+        public double getCharsWrittenPerSecond() { return Totals.charsWritten.sum() / secondsSinceStart(); }
+    }
+
+    // *****************
+
+    /**
+     * Count, total and latency histogram of one stage. Bucket i counts the times from 2^i up to 2^(i+1)
+     * nanoseconds, so a percentile is known to within a factor of two. The slowest time is kept as it was seen
+     */
+    private static final class Timer implements TimerMBean {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void add(long nanos) {
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long getCount() { return count.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public double getMeanNanos() { return (double) totalNanos.sum() / Math.max(1, count.sum()); }
+        public long getP50Nanos() { return percentile(50); }
+        public long getP90Nanos() { return percentile(90); }
+        public long getP99Nanos() { return percentile(99); }
+        public long getMaxNanos() { return maxNanos.get(); }
+
+        /**
+         * @return the upper bound of the bucket the percentile falls in, 0 if nothing was timed
+         */
+        private long percentile(double percent) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); ++i)
+                total += buckets.get(i);
+            long rank = (long) Math.ceil(percent / 100 * total);
+            for (int i = 0; i < buckets.length() && total > 0; ++i) {
+                rank -= buckets.get(i);
+                if (rank <= 0)
+                    return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+            return 0;
+        }
+    }
+
+    // *****************
+
+    /**
+     * JFR event for a text streamed through the translator, from its first line to its last
+     */
+    @Name("piglatin.Translation")
+    @Label("Translation")
+    @Category("Pig Latin")
+    @Description("A text streamed through the translator")
+    static final class TranslationEvent extends Event {
+        @Label("Lines")
+        long lines;
+
+        @Label("Chars Read")
+        long charsRead;
+
+        @Label("Chars Written")
+        long charsWritten;
+    }
+
+    // *****************
+
+    /**
+     * JFR event with the throughput counters, sent every second while a recording runs
+     */
+    @Name("piglatin.Throughput")
+    @Label("Throughput")
+    @Category("Pig Latin")
+    @Description("Totals of the translation counters")
+    @Period("1 s")
+    static final class ThroughputEvent extends Event {
+        @Label("Lines")
+        long lines;
+
+        @Label("Words")
+        long words;
+
+        @Label("Symbol-Only Tokens")
+        long symbolTokens;
+
+        @Label("Chars Read")
+        long charsRead;
+
+        @Label("Chars Written")
+        long charsWritten;
+    }
+
+    // *****************
+}
@@ -0,0 +1,158 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * This is a local translation server. It loads the translator once and serves requests over loopback HTTP, so
+ * small translations don't pay for starting a JVM every time. HTTP/1.1 connections are kept alive between
+ * requests, and every request is handled on a virtual thread of its own when the JVM has them.
+ * Requests are POSTs with UTF-8 text as the body, and the translation comes back as UTF-8 text:
+ * - /encode and /decode translate the body like a file is translated.
+ * - /batch/encode and /batch/decode take a batch of texts, one per line, and answer with one translated line for
+ *   every line of the batch, empty lines included, so many small texts can share a request.
+ * The server only listens on the loopback address, since it doesn't authenticate anyone.
+ */
+public class TranslationServer {
+    private static final int BACKLOG = 256;                  // Connections waiting to be accepted
+    private static final int BUFFER_SIZE = 1 << 13;          // Size of the request and response buffers
+
+    static {
+        // The JDK server writes the headers and the body of a response separately, so with Nagle's algorithm on,
+        // every small response waits for the client's delayed ACK, about 40 ms. Turn it off unless told otherwise
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final WordTranslator translator;                 // The translation core shared by every request
+    private final HttpServer server;                         // Accepts connections and parses HTTP
+    private final ExecutorService threads;                   // Handles the requests
+
+    // *****************
+
+    /**
+     * The constructor that binds the server to a loopback port. It doesn't serve anything until it is started
+     * @param translator the translation core, shared by every request
+     * @param port the port to listen on, 0 for any free port
+     * @param fallbackThreads the number of threads that handle requests if the JVM has no virtual threads
+     * @throws IOException if the port can't be bound
+     */
+    public TranslationServer(WordTranslator translator, int port, int fallbackThreads) throws IOException {
+        this.translator = translator;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.threads = VirtualThreads.newPerTaskExecutor(fallbackThreads);
+        server.setExecutor(threads);
+        server.createContext("/encode", exchange -> handle(exchange, translator::encodeSentence, false));
+        server.createContext("/decode", exchange -> handle(exchange, translator::decodeSentence, false));
+        server.createContext("/batch/encode", exchange -> handle(exchange, translator::encodeSentence, true));
+        server.createContext("/batch/decode", exchange -> handle(exchange, translator::decodeSentence, true));
+    }
+
+    // *****************
+
+    /**
+     * This function will start serving requests in the background
+     */
+    public void start() {
+        server.start();
+    }
+
+    // *****************
+
+    /**
+     * This function will stop taking new requests, give the ones being handled a moment to finish and stop the
+     * threads
+     * @param delaySeconds most seconds to wait for requests being handled
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        threads.shutdown();
+    }
+
+    // *****************
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // *****************
+
+    /**
+     * @return the translation core shared by every request
+     */
+    public WordTranslator translator() {
+        return translator;
+    }
+
+    // *****************
+
+    /**
+     * This function will answer one request. Anything but a POST is refused
+     * @param exchange the request and its response
+     * @param sentenceTranslator translates one line in the direction of the path
+     * @param batch true if every line of the body is a text of its own
+     * @throws IOException if the connection fails
+     */
+    private static void handle(HttpExchange exchange, SentenceTranslator sentenceTranslator, boolean batch)
+            throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            ByteArrayOutputStream response = new ByteArrayOutputStream(BUFFER_SIZE);
+            BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(),
+                    StandardCharsets.UTF_8), BUFFER_SIZE);
+            Writer out = new OutputStreamWriter(response, StandardCharsets.UTF_8);
+
+            if (batch)
+                translateBatch(in, out, sentenceTranslator);
+            else
+                Translator.translateLines(in, out, sentenceTranslator, false);
+            out.flush();
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, response.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                response.writeTo(body);
+            }
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will translate every line of a batch on its own, keeping empty lines, so the answer has a line
+     * for every text of the batch
+     * @param in the reader to take the batch from
+     * @param out the writer to put the translated lines into
+     * @param sentenceTranslator translates one line in the direction of the path
+     * @throws IOException if reading or writing fails
+     */
+    private static void translateBatch(BufferedReader in, Writer out, SentenceTranslator sentenceTranslator)
+            throws IOException {
+        StringBuilder translation = new StringBuilder();     // Translated line, reused for every line
+
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            translation.setLength(0);
+            sentenceTranslator.translate(line, 0, line.length(), translation);
+            translation.append('\n');
+            out.append(translation);
+        }
+    }
+
+    // *****************
+}
@@ -0,0 +1,426 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * This is the Pig Latin translator for use inside other programs. It translates text the same way the
+ * command line does: line by line, every word followed by a single space, and empty lines at the end dropped.
+ * Text can be translated from a CharSequence into an Appendable, or streamed from a Reader into a Writer without
+ * holding more than a line in memory. Errors are thrown as exceptions, never by exiting.
+ * A Translator can also keep the layout of the text: then only the words are rewritten, and every space, tab,
+ * line end and empty line is written back exactly as it was, instead of a single space after every word.
+ * A Translator never changes after it is built and keeps no state between calls, so one instance can be shared
+ * by any number of threads without locking.
+ */
+public final class Translator {
+    private static final int BUFFER_SIZE = 1 << 16;      // Size of the buffer put in front of plain Readers
+    private static final int PIECE_SIZE = 1 << 12;       // Chars of a block translated from one String at least
+
+    private final WordTranslator words;                  // Translates the words of a line
+    private final boolean keepLayout;                    // Copy everything but the words as it is
+
+    // *****************
+
+    /**
+     * The constructor for the standard rules: "pig" becomes "ig-pay" and "apple" becomes "apple-ay"
+     */
+    public Translator() {
+        this(Dialect.STANDARD, 0);
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets the rules to translate with
+     * @param dialect the rules to translate with
+     */
+    public Translator(Dialect dialect) {
+        this(dialect, 0);
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets the rules to translate with and the size of the word caches
+     * @param dialect the rules to translate with
+     * @param cacheCapacity most words cached for each direction, 0 for no cache
+     */
+    public Translator(Dialect dialect, int cacheCapacity) {
+        this(new WordTranslator(Objects.requireNonNull(dialect, "dialect"), cacheCapacity));
+    }
+
+    // *****************
+
+    /**
+     * The constructor that translates with an existing translation core
+     * @param words the translation core
+     */
+    public Translator(WordTranslator words) {
+        this(words, false);
+    }
+
+    // *****************
+
+    /**
+     * The constructor that translates with an existing translation core and can keep the layout of the text
+     * @param words the translation core
+     * @param keepLayout true to copy everything but the words as it is, false for a single space after every word
+     */
+    public Translator(WordTranslator words, boolean keepLayout) {
+        this.words = Objects.requireNonNull(words, "words");
+        this.keepLayout = keepLayout;
+    }
+
+    // *****************
+
+    /**
+     * @return the translation core, which also has the word caches
+     */
+    public WordTranslator wordTranslator() {
+        return words;
+    }
+
+    // *****************
+
+    /**
+     * @return true if everything but the words is copied as it is
+     */
+    public boolean keepsLayout() {
+        return keepLayout;
+    }
+
+    // *****************
+
+    /**
+     * This function will encode text into Pig Latin
+     * @param text the text to encode
+     * @return the encoded text
+     */
+    public String encode(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length() + text.length() / 2);
+        translate(text, out, true);
+        return out.toString();
+    }
+
+    // *****************
+
+    /**
+     * This function will decode text from Pig Latin
+     * @param text the text to decode
+     * @return the decoded text
+     */
+    public String decode(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length());
+        translate(text, out, false);
+        return out.toString();
+    }
+
+    // *****************
+
+    /**
+     * This function will encode text into Pig Latin and append it to the output
+     * @param text the text to encode
+     * @param out where the encoded text goes
+     * @throws IOException if appending to the output fails
+     */
+    public void encode(CharSequence text, Appendable out) throws IOException {
+        append(text, out, true);
+    }
+
+    // *****************
+
+    /**
+     * This function will decode text from Pig Latin and append it to the output
+     * @param text the text to decode
+     * @param out where the decoded text goes
+     * @throws IOException if appending to the output fails
+     */
+    public void decode(CharSequence text, Appendable out) throws IOException {
+        append(text, out, false);
+    }
+
+    // *****************
+
+    /**
+     * This function will encode everything the reader has into Pig Latin and write it to the writer. Neither of
+     * them is closed or flushed
+     * @param in where the text to encode comes from
+     * @param out where the encoded text goes
+     * @throws IOException if reading or writing fails
+     */
+    public void encode(Reader in, Writer out) throws IOException {
+        if (keepLayout)
+            translateKeepingLayout(Objects.requireNonNull(in, "in"), Objects.requireNonNull(out, "out"),
+                    words::encodeKeepingLayout, false);
+        else
+            translateLines(buffered(in), Objects.requireNonNull(out, "out"), words::encodeSentence, false);
+    }
+
+    // *****************
+
+    /**
+     * This function will decode everything the reader has from Pig Latin and write it to the writer. Neither of
+     * them is closed or flushed
+     * @param in where the text to decode comes from
+     * @param out where the decoded text goes
+     * @throws IOException if reading or writing fails
+     */
+    public void decode(Reader in, Writer out) throws IOException {
+        if (keepLayout)
+            translateKeepingLayout(Objects.requireNonNull(in, "in"), Objects.requireNonNull(out, "out"),
+                    words::decodeKeepingLayout, false);
+        else
+            translateLines(buffered(in), Objects.requireNonNull(out, "out"), words::decodeSentence, false);
+    }
+
+    // *****************
+
+    /**
+     * This function will translate text into any Appendable. A StringBuilder is translated into directly, anything
+     * else gets the whole translation appended in one go once it is done
+     * @param text the text to translate
+     * @param out where the translation goes
+     * @param encode true to encode, false to decode
+     * @throws IOException if appending to the output fails
+     */
+    private void append(CharSequence text, Appendable out, boolean encode) throws IOException {
+        Objects.requireNonNull(out, "out");
+        if (out instanceof StringBuilder) {
+            translate(text, (StringBuilder) out, encode);
+            return;
+        }
+        StringBuilder translation = new StringBuilder(text.length() + text.length() / 2);
+        translate(text, translation, encode);
+        out.append(translation);
+    }
+
+    // *****************
+
+    /**
+     * This function will translate text into the buffer, all of it at once if the layout is kept or else line by
+     * line
+     * @param text the text to translate
+     * @param out the buffer to append the translation to
+     * @param encode true to encode, false to decode
+     */
+    private void translate(CharSequence text, StringBuilder out, boolean encode) {
+        if (keepLayout && encode)
+            words.encodeKeepingLayout(text, 0, text.length(), out);
+        else if (keepLayout)
+            words.decodeKeepingLayout(text, 0, text.length(), out);
+        else
+            translate(text, out, encode ? words::encodeSentence : words::decodeSentence);
+    }
+
+    // *****************
+
+    /**
+     * This function will translate text one line at a time into the output. Lines end at "\n", "\r" or "\r\n"
+     * like BufferedReader.readLine sees them, and empty lines are held back until a non-empty line follows them,
+     * so empty lines at the end of the text are dropped
+     * @param text the text to translate
+     * @param out the buffer to append the translation to
+     * @param sentenceTranslator translates one line
+     */
+    static void translate(CharSequence text, StringBuilder out, SentenceTranslator sentenceTranslator) {
+        int emptyLines = 0;                               // Empty lines waiting to be written
+        int length = text.length();
+        int start = 0;
+        int nextNewline = -1;                             // Index of the next '\n', searched again once passed
+        int nextReturn = -1;                              // Index of the next '\r', searched again once passed
+
+        while (start < length) {
+            if (nextNewline < start)                      // Find the end of the line, every char is searched once
+                nextNewline = endOrIndexOf(text, start, length, '\n');
+            if (nextReturn < start)
+                nextReturn = endOrIndexOf(text, start, length, '\r');
+            int end = Math.min(nextNewline, nextReturn);
+            if (end == start)                             // Hold on to empty lines
+                ++emptyLines;
+            else {
+                int translationStart = out.length();
+                for (; emptyLines > 0; --emptyLines)      // A sentence follows, so write the empty lines
+                    out.append(" \n");
+                sentenceTranslator.translate(text, start, end, out);
+                out.append('\n');
+                if (TranslationMetrics.ENABLED)
+                    TranslationMetrics.line(end - start + 1, out.length() - translationStart);
+            }
+            if (end + 1 < length && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n')
+                ++end;                                    // "\r\n" ends a single line
+            start = end + 1;
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the index of the first copy of the char from start on, or the end of the text if there is none
+     */
+    private static int endOrIndexOf(CharSequence text, int start, int length, char character) {
+        int index = TokenScanner.indexOf(text, start, length, character);
+        return index < 0 ? length : index;
+    }
+
+    // *****************
+
+    /**
+     * This function will translate text from the reader into the writer one line at a time. Only the current line
+     * is held in memory. Empty lines are held back until a non-empty line follows them, so empty lines at the end
+     * of the text are dropped the same way the text of a CharSequence is translated. The writer can also be
+     * flushed whenever the reader has no more text ready, so whoever reads the output gets every line as soon as
+     * it is translated, while text that comes in faster than that is still written in big blocks.
+     * @param in the reader to take the text from
+     * @param out the writer to put the translated text into
+     * @param sentenceTranslator translates one line
+     * @param flushWhenIdle true to flush the writer before waiting for more text
+     * @throws IOException if reading or writing fails
+     */
+    static void translateLines(BufferedReader in, Writer out, SentenceTranslator sentenceTranslator,
+                               boolean flushWhenIdle) throws IOException {
+        if (TranslationMetrics.ENABLED) {
+            translateLinesTimed(in, out, sentenceTranslator, flushWhenIdle);
+            return;
+        }
+        StringBuilder translation = new StringBuilder();  // Translated line, reused for every line
+        char[] chars = new char[0];                       // Chars of the translated line handed to the writer
+        int emptyLines = 0;                               // Empty lines waiting to be written
+        String line = in.readLine();                      // Start reading line by line
+
+        while (line != null) {                            // Until we reach end of text
+            if (line.isEmpty())                           // Hold on to empty lines
+                ++emptyLines;
+            else {
+                for (; emptyLines > 0; --emptyLines)      // A sentence follows, so write the empty lines
+                    out.write(" \n");
+                translation.setLength(0);                 // Translate the sentence and write it
+                sentenceTranslator.translate(line, 0, line.length(), translation);
+                translation.append('\n');
+                if (chars.length < translation.length())
+                    chars = new char[translation.capacity()];
+                translation.getChars(0, translation.length(), chars, 0);
+                out.write(chars, 0, translation.length());
+            }
+            if (flushWhenIdle && !in.ready())             // Reading on would block, so hand over what we have
+                out.flush();
+            line = in.readLine();
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will do what translateLines does while timing every read and write, counting every line and
+     * sending a JFR event for the whole text. It is kept apart so the loop that runs without metrics has no trace
+     * of them
+     */
+    private static void translateLinesTimed(BufferedReader in, Writer out, SentenceTranslator sentenceTranslator,
+                                            boolean flushWhenIdle) throws IOException {
+        TranslationMetrics.TranslationEvent event = new TranslationMetrics.TranslationEvent();
+        StringBuilder translation = new StringBuilder();  // Translated line, reused for every line
+        char[] chars = new char[0];                       // Chars of the translated line handed to the writer
+        int emptyLines = 0;                               // Empty lines waiting to be written
+        long started = System.nanoTime();
+        event.begin();
+        String line = in.readLine();                      // Start reading line by line
+        TranslationMetrics.record(TranslationMetrics.Stage.READ, started);
+
+        while (line != null) {                            // Until we reach end of text
+            if (line.isEmpty())                           // Hold on to empty lines
+                ++emptyLines;
+            else {
+                translation.setLength(0);                 // Translate the sentence and write it
+                for (; emptyLines > 0; --emptyLines)      // A sentence follows, so write the empty lines
+                    translation.append(" \n");
+                sentenceTranslator.translate(line, 0, line.length(), translation);
+                translation.append('\n');
+                if (chars.length < translation.length())
+                    chars = new char[translation.capacity()];
+                translation.getChars(0, translation.length(), chars, 0);
+                started = System.nanoTime();
+                out.write(chars, 0, translation.length());
+                TranslationMetrics.record(TranslationMetrics.Stage.WRITE, started);
+                TranslationMetrics.line(line.length() + 1, translation.length());
+                ++event.lines;
+                event.charsRead += line.length() + 1;
+                event.charsWritten += translation.length();
+            }
+            if (flushWhenIdle && !in.ready())             // Reading on would block, so hand over what we have
+                out.flush();
+            started = System.nanoTime();
+            line = in.readLine();
+            TranslationMetrics.record(TranslationMetrics.Stage.READ, started);
+        }
+        event.commit();
+    }
+
+    // *****************
+
+    /**
+     * This function will translate text from the reader into the writer keeping its layout, a block at a time
+     * rather than a line at a time. A block is cut after its last whitespace char, so no word is split between two
+     * blocks, and the rest is carried over to the next one; a block without whitespace grows until one comes or
+     * the text ends. A block is translated in pieces of a few thousand chars, so a char beyond Latin-1 only turns
+     * its own piece into a String of two bytes per char, which is slower to search, rather than the whole block.
+     * The writer can also be flushed whenever the reader has no more text ready, like translateLines does
+     * @param in the reader to take the text from
+     * @param out the writer to put the translated text into
+     * @param textTranslator translates any text keeping its layout, such as WordTranslator::encodeKeepingLayout
+     * @param flushWhenIdle true to flush the writer before waiting for more text
+     * @throws IOException if reading or writing fails
+     */
+    static void translateKeepingLayout(Reader in, Writer out, SentenceTranslator textTranslator,
+                                       boolean flushWhenIdle) throws IOException {
+        char[] block = new char[BUFFER_SIZE];             // Text read and not translated yet
+        int length = 0;                                   // Chars of the block filled
+        StringBuilder translation = new StringBuilder();  // Translated block, reused for every block
+        char[] chars = new char[0];                       // Chars of the translated block handed to the writer
+        boolean ended = false;
+
+        while (!ended) {
+            if (length == block.length)                   // A word as long as the block, make room for its end
+                block = Arrays.copyOf(block, 2 * block.length);
+            int read = in.read(block, length, block.length - length);
+            if (read < 0)
+                ended = true;
+            else
+                length += read;
+            int cut = length;                             // Translate up to the last whitespace, or all at the end
+            while (!ended && cut > 0 && !WordTranslator.isWhitespace(block[cut - 1]))
+                --cut;
+            if (cut > 0) {
+                translation.setLength(0);
+                for (int piece = 0, pieceEnd; piece < cut; piece = pieceEnd) {
+                    pieceEnd = Math.min(cut, piece + PIECE_SIZE);
+                    while (!WordTranslator.isWhitespace(block[pieceEnd - 1]) && pieceEnd < cut)
+                        ++pieceEnd;                       // Don't split a word between two pieces
+                    textTranslator.translate(new String(block, piece, pieceEnd - piece), 0, pieceEnd - piece,
+                            translation);
+                }
+                if (chars.length < translation.length())
+                    chars = new char[translation.capacity()];
+                translation.getChars(0, translation.length(), chars, 0);
+                out.write(chars, 0, translation.length());
+                System.arraycopy(block, cut, block, 0, length - cut);
+                length -= cut;
+            }
+            if (flushWhenIdle && !ended && !in.ready())   // Reading on would block, so hand over what we have
+                out.flush();
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the reader itself if it is buffered, or else a buffer in front of it
+     */
+    private static BufferedReader buffered(Reader in) {
+        Objects.requireNonNull(in, "in");
+        return in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, BUFFER_SIZE);
+    }
+
+    // *****************
+}
@@ -0,0 +1,47 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Makes executors that run every task on a virtual thread of its own when the JVM has them (Java 21 and up). The
+ * project still builds for older JVMs, so the factory method is looked up at run time, and a fixed pool of
+ * platform threads is used when it is missing.
+ */
+public final class VirtualThreads {
+
+    // *****************
+
+    private VirtualThreads() {
+    }
+
+    // *****************
+
+    /**
+     * This function will make an executor that starts a virtual thread for every task, or a fixed pool of platform
+     * threads if the JVM has no virtual threads
+     * @param fallbackThreads the number of platform threads to use without virtual threads
+     * @return the executor, to be shut down by the caller
+     */
+    public static ExecutorService newPerTaskExecutor(int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException noVirtualThreads) {   // Before Java 21
+            return Executors.newFixedThreadPool(fallbackThreads);
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return true if executors made by this class use virtual threads
+     */
+    public static boolean available() {
+        try {
+            ((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)).shutdown();
+            return true;
+        } catch (ReflectiveOperationException noVirtualThreads) {
+            return false;
+        }
+    }
+
+    // *****************
+}
@@ -0,0 +1,287 @@
+/**
+ * A bounded cache from a word to its translation. Natural text keeps repeating the same few thousand words, so
+ * most words can be copied out of the cache instead of being translated again.
+ * The words are kept in small sets of WAYS slots, the way CPU caches are built: a word can only live in the set
+ * its hash picks, and when the set is full the least recently used word of the set is evicted. Every slot holds an
+ * immutable entry with the word followed by its translation in one char array, so a hit reads a few flat arrays
+ * and doesn't allocate anything.
+ * A word is translated in well under a microsecond, so a lookup has to cost less than that or caching is slower
+ * than translating again. That is why lookups don't take a lock: entries never change once they are stored, so a
+ * thread always sees a whole entry. Storing a word locks the segment of the cache its hash picks, so threads
+ * storing different words rarely wait on each other. The recency of the slots and the hit and miss counters are
+ * updated without the lock too, so when threads share the cache a use may be lost now and then, which can only
+ * make eviction or the counters slightly off, never a translation.
+ */
+public class WordCache {
+    private static final int SEGMENTS = 16;      // Most independently locked segments, a power of two
+    private static final int WAYS = 4;           // Slots of a set, a word can be kept in any of them
+
+    private final Segment[] segments;            // The segments words are spread over
+    private final int mask;                      // Picks a segment from the bits of a hash
+    private final int capacity;                  // Most words the cache holds
+
+    // *****************
+
+    /**
+     * The constructor that sets up the segments
+     * @param capacity most words the cache holds, at least 1
+     */
+    public WordCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The cache must hold at least one word");
+        this.capacity = capacity;
+        int count = Math.min(SEGMENTS, Integer.highestOneBit(capacity));   // Every segment holds a word or more
+        this.segments = new Segment[count];
+        this.mask = count - 1;
+        for (int i = 0; i < count; ++i)            // Spread the capacity over the segments
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+    }
+
+    // *****************
+
+    /**
+     * This function will look the word up and append its translation to the output if it is cached
+     * @param text the text that holds the word
+     * @param start index of the first char of the word
+     * @param end index one past the last char of the word
+     * @param out the buffer to append the translation to
+     * @return true if the word was cached, false if the caller has to translate it
+     */
+    public boolean appendCached(CharSequence text, int start, int end, StringBuilder out) {
+        int hash = hash(text, start, end);
+        Segment segment = segmentFor(hash);
+        Entry entry = segment.find(text, start, end, hash);
+
+        if (entry == null) {
+            ++segment.misses;
+            return false;
+        }
+        ++segment.hits;
+        segment.lastUsed[entry.slot] = ++segment.clock;
+        out.append(entry.chars, entry.wordLength, entry.chars.length - entry.wordLength);
+        return true;
+    }
+
+    // *****************
+
+    /**
+     * This function will save the translation of a word, evicting the least recently used word of its set if the
+     * set is full
+     * @param text the text that holds the word
+     * @param start index of the first char of the word
+     * @param end index one past the last char of the word
+     * @param translation the text that holds the translation
+     * @param translationStart index of the first char of the translation
+     * @param translationEnd index one past the last char of the translation
+     */
+    public void put(CharSequence text, int start, int end, CharSequence translation, int translationStart,
+                    int translationEnd) {
+        int hash = hash(text, start, end);
+        Segment segment = segmentFor(hash);
+        char[] chars = new char[end - start + translationEnd - translationStart];   // The word, then its translation
+
+        for (int i = start; i < end; ++i)
+            chars[i - start] = text.charAt(i);
+        for (int i = translationStart; i < translationEnd; ++i)
+            chars[end - start + i - translationStart] = translation.charAt(i);
+        synchronized (segment) {
+            if (segment.find(text, start, end, hash) != null)   // Another thread got there first
+                return;
+            int slot = segment.victim(hash);
+            if (segment.entries[slot] == null)
+                ++segment.size;
+            else
+                ++segment.evictions;
+            segment.entries[slot] = new Entry(chars, end - start, hash, slot);
+            segment.lastUsed[slot] = ++segment.clock;
+        }
+    }
+
+    // *****************
+
+    /**
+     * @return the number of words that were found in the cache
+     */
+    public long hits() {
+        long hits = 0;
+        for (Segment segment : segments)
+            hits += segment.hits;
+        return hits;
+    }
+
+    // *****************
+
+    /**
+     * @return the number of words that were not found in the cache
+     */
+    public long misses() {
+        long misses = 0;
+        for (Segment segment : segments)
+            misses += segment.misses;
+        return misses;
+    }
+
+    // *****************
+
+    /**
+     * @return the number of words that were dropped to make room for other words
+     */
+    public long evictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    // *****************
+
+    /**
+     * @return the number of words in the cache
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    // *****************
+
+    /**
+     * @return the most words the cache holds
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    // *****************
+
+    @Override
+    public String toString() {
+        return "hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions() + ", size=" + size() + "/"
+                + capacity;
+    }
+
+    // *****************
+
+    /**
+     * @return the segment that holds words with this hash. It is picked from the high bits of the mixed hash,
+     * because the segment picks the set from the low bits
+     */
+    private Segment segmentFor(int hash) {
+        return segments[((hash * 0x9E3779B9) >>> 28) & mask];
+    }
+
+    // *****************
+
+    /**
+     * @return the same hash String.hashCode would give the chars of the range
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; ++i)
+            hash = 31 * hash + text.charAt(i);
+        return hash;
+    }
+
+    // *****************
+
+    /**
+     * A word and its translation as stored in a slot. Its fields are final, so a thread that reads it from a slot
+     * without the lock still sees all of it
+     */
+    private static final class Entry {
+        final char[] chars;         // The word followed by its translation
+        final int wordLength;       // Length of the word, the rest of the chars are the translation
+        final int hash;             // Hash of the word
+        final int slot;             // The slot the entry is stored in
+
+        Entry(char[] chars, int wordLength, int hash, int slot) {
+            this.chars = chars;
+            this.wordLength = wordLength;
+            this.hash = hash;
+            this.slot = slot;
+        }
+    }
+
+    // *****************
+
+    /**
+     * The slots of one part of the cache and its counters. The lock of the segment guards storing entries, the
+     * evictions and the size
+     */
+    private static final class Segment {
+        final Entry[] entries;      // The entry in each slot, null if the slot is empty
+        final long[] lastUsed;      // Clock of the last time each slot was read or written
+        final int sets;             // Number of sets, the last one may have fewer than WAYS slots
+        long clock;                 // Counts every use of a slot
+        long hits;
+        long misses;
+        long evictions;
+        int size;
+
+        Segment(int capacity) {
+            this.entries = new Entry[capacity];
+            this.lastUsed = new long[capacity];
+            this.sets = (capacity + WAYS - 1) / WAYS;
+        }
+
+        /**
+         * @return the entry that holds the word, or null if it isn't cached
+         */
+        Entry find(CharSequence text, int start, int end, int hash) {
+            int first = firstSlot(hash);
+            int last = Math.min(first + WAYS, entries.length);
+
+            for (int slot = first; slot < last; ++slot) {
+                Entry entry = entries[slot];
+                if (entry != null && entry.hash == hash && entry.wordLength == end - start
+                        && matches(entry.chars, text, start, end))
+                    return entry;
+            }
+            return null;
+        }
+        /**
+         * @return the slot of the word's set to store it in: an empty one, or else the least recently used one
+         */
+        int victim(int hash) {
+            int first = firstSlot(hash);
+            int last = Math.min(first + WAYS, entries.length);
+            int victim = first;
+
+            for (int slot = first; slot < last; ++slot) {
+                if (entries[slot] == null)
+                    return slot;
+                if (lastUsed[slot] < lastUsed[victim])
+                    victim = slot;
+            }
+            return victim;
+        }
+
+        /**
+         * @return the first slot of the set that words with this hash are kept in
+         */
+        private int firstSlot(int hash) {
+            return Integer.remainderUnsigned(hash ^ (hash >>> 16), sets) * WAYS;
+        }
+
+        /**
+         * @return true if the entry starts with the chars of the word
+         */
+        private static boolean matches(char[] entry, CharSequence text, int start, int end) {
+            for (int i = start; i < end; ++i) {
+                if (entry[i - start] != text.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    // *****************
+}
@@ -0,0 +1,617 @@
+import java.util.Arrays;
+
+/**
+ * This is the translation core. It works on index ranges of the input text and appends the translation straight
+ * into an output buffer that the caller reuses, so once the buffer has grown big enough translating a word doesn't
+ * allocate anything.
+ * A word is split into three ranges: the leading symbols and numbers, the core of the word that contains letters,
+ * and the ending symbols and numbers. Only the core is rearranged, the symbols are copied as they are.
+ * The rules come from a Dialect, which has them compiled into lookup tables. Translations of whole words can be
+ * kept in a WordCache for each direction, so repeated words are copied instead of translated again.
+ * Some Pig Latin words can be decoded in more than one way. Without a Lexicon the same guess is always made, with
+ * one the first decoding that is a known word is picked.
+ * A WordTranslator never changes after it is built and its caches are thread safe, so one instance can be shared
+ * by any number of threads.
+ */
+public class WordTranslator {
+    private final Dialect dialect;          // The rules to translate with
+    private final WordCache encodeCache;    // Encoded words, null if there is no cache
+    private final WordCache decodeCache;    // Decoded words, null if there is no cache
+    private final Lexicon lexicon;          // Picks between the decodings of an ambiguous word, null if there is none
+
+    // *****************
+
+    /**
+     * The constructor that sets the rules to translate with
+     * @param dialect the rules to translate with
+     */
+    public WordTranslator(Dialect dialect) {
+        this(dialect, 0);
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets the rules to translate with and the size of the word caches
+     * @param dialect the rules to translate with
+     * @param cacheCapacity most words cached for each direction, 0 for no cache
+     */
+    public WordTranslator(Dialect dialect, int cacheCapacity) {
+        this(dialect, cacheCapacity, null);
+    }
+
+    // *****************
+
+    /**
+     * The constructor that sets the rules to translate with, the size of the word caches and the known words
+     * @param dialect the rules to translate with
+     * @param cacheCapacity most words cached for each direction, 0 for no cache
+     * @param lexicon the known words that pick between the decodings of an ambiguous word, null for none
+     */
+    public WordTranslator(Dialect dialect, int cacheCapacity, Lexicon lexicon) {
+        this.dialect = dialect;
+        this.encodeCache = cacheCapacity > 0 ? new WordCache(cacheCapacity) : null;
+        this.decodeCache = cacheCapacity > 0 ? new WordCache(cacheCapacity) : null;
+        this.lexicon = lexicon;
+    }
+
+    // *****************
+
+    /**
+     * @return the cache of encoded words, or null if there is no cache
+     */
+    public WordCache encodeCache() {
+        return encodeCache;
+    }
+
+    // *****************
+
+    /**
+     * @return the cache of decoded words, or null if there is no cache
+     */
+    public WordCache decodeCache() {
+        return decodeCache;
+    }
+
+    // *****************
+
+    /**
+     * @return the known words that pick between the decodings of an ambiguous word, or null if there are none
+     */
+    public Lexicon lexicon() {
+        return lexicon;
+    }
+
+    // *****************
+
+    /**
+     * This function will encode a sentence into Pig Latin. The sentence is split into words at every space, and
+     * every word is followed by a single space in the translation.
+     * @param text the text that holds the sentence
+     * @param start index of the first char of the sentence
+     * @param end index one past the last char of the sentence
+     * @param out the buffer to append the translation to
+     */
+    public void encodeSentence(CharSequence text, int start, int end, StringBuilder out) {
+        translateSentence(text, start, end, out, true);
+    }
+
+    // *****************
+
+    /**
+     * This function will decode a sentence from Pig Latin. The sentence is split into words at every space, and
+     * every word is followed by a single space in the translation.
+     * @param text the text that holds the sentence
+     * @param start index of the first char of the sentence
+     * @param end index one past the last char of the sentence
+     * @param out the buffer to append the translation to
+     */
+    public void decodeSentence(CharSequence text, int start, int end, StringBuilder out) {
+        translateSentence(text, start, end, out, false);
+    }
+
+    // *****************
+
+    /**
+     * This function will translate a sentence, timing it if metrics are enabled
+     * @param text the text that holds the sentence
+     * @param start index of the first char of the sentence
+     * @param end index one past the last char of the sentence
+     * @param out the buffer to append the translation to
+     * @param encode true to encode, false to decode
+     */
+    private void translateSentence(CharSequence text, int start, int end, StringBuilder out, boolean encode) {
+        if (!TranslationMetrics.ENABLED) {
+            translateWords(text, start, end, out, encode);
+            return;
+        }
+        long started = System.nanoTime();
+        translateWords(text, start, end, out, encode);
+        TranslationMetrics.record(TranslationMetrics.Stage.SENTENCE, started);
+    }
+
+    // *****************
+
+    /**
+     * This function will split the sentence into words the same way String.split(" ") does: empty words between
+     * two spaces are kept, but the empty words after the last real word are dropped.
+     * @param text the text that holds the sentence
+     * @param start index of the first char of the sentence
+     * @param end index one past the last char of the sentence
+     * @param out the buffer to append the translation to
+     * @param encode true to encode, false to decode
+     */
+    private void translateWords(CharSequence text, int start, int end, StringBuilder out, boolean encode) {
+        int last = end;                                // End of the last real word
+
+        while (last > start && text.charAt(last - 1) == ' ')
+            --last;
+        if (last == start && end > start)              // Nothing but spaces, so there are no words
+            return;
+        for (int wordStart = start; ; ) {              // For all words in the sentence
+            int wordEnd = TokenScanner.indexOf(text, wordStart, last, ' ');
+            if (wordEnd < 0)                           // The last word
+                wordEnd = last;
+            if (isSequenceOfSymbols(text, wordStart, wordEnd)) {   // Don't edit if sequence of symbols and numbers only
+                out.append(text, wordStart, wordEnd);
+                if (TranslationMetrics.ENABLED)
+                    TranslationMetrics.symbolToken();
+            } else if (TranslationMetrics.ENABLED) {
+                long started = System.nanoTime();
+                translateWord(text, wordStart, wordEnd, out, encode);
+                TranslationMetrics.record(TranslationMetrics.Stage.WORD, started);
+                TranslationMetrics.word();
+            } else
+                translateWord(text, wordStart, wordEnd, out, encode);
+            out.append(' ');
+            if (wordEnd >= last)
+                return;
+            wordStart = wordEnd + 1;
+        }
+    }
+
+    // *****************
+
+    /**
+     * This function will encode text into Pig Latin keeping its layout. Only the cores of the words are rewritten,
+     * everything else is copied as it is: whitespace of any kind, line ends included, tokens of symbols and numbers
+     * only, and the symbols around a word. The text can hold any number of lines.
+     * @param text the text to encode
+     * @param start index of the first char to encode
+     * @param end index one past the last char to encode
+     * @param out the buffer to append the translation to
+     */
+    public void encodeKeepingLayout(CharSequence text, int start, int end, StringBuilder out) {
+        translateKeepingLayout(text, start, end, out, true);
+    }
+
+    // *****************
+
+    /**
+     * This function will decode text from Pig Latin keeping its layout. Only the cores of the words are rewritten,
+     * everything else is copied as it is: whitespace of any kind, line ends included, tokens of symbols and numbers
+     * only, and the symbols around a word. The text can hold any number of lines.
+     * @param text the text to decode
+     * @param start index of the first char to decode
+     * @param end index one past the last char to decode
+     * @param out the buffer to append the translation to
+     */
+    public void decodeKeepingLayout(CharSequence text, int start, int end, StringBuilder out) {
+        translateKeepingLayout(text, start, end, out, false);
+    }
+
+    // *****************
+
+    /**
+     * This function will split the text into tokens at every whitespace char and translate the core of every token
+     * that has letters. The text between two cores is never looked at again: it is copied in one span straight from
+     * the text when the next core is reached, so a run of whitespace, symbols and symbol-only tokens costs a single
+     * append however long it is.
+     * @param text the text to translate
+     * @param start index of the first char to translate
+     * @param end index one past the last char to translate
+     * @param out the buffer to append the translation to
+     * @param encode true to encode, false to decode
+     */
+    private void translateKeepingLayout(CharSequence text, int start, int end, StringBuilder out, boolean encode) {
+        int span = start;                              // Start of the text not copied yet, copied as it is
+
+        for (int index = start; index < end; ) {
+            while (index < end && isWhitespace(text.charAt(index)))
+                ++index;
+            int tokenStart = index;
+            while (index < end && !isWhitespace(text.charAt(index)))
+                ++index;
+            int coreStart = skipLeadingSymbols(text, tokenStart, index);
+            if (coreStart == index) {                  // Symbols and numbers only, or no token at all
+                if (TranslationMetrics.ENABLED && tokenStart < index)
+                    TranslationMetrics.symbolToken();
+                continue;
+            }
+            int coreEnd = skipEndingSymbols(text, coreStart, index);
+            out.append(text, span, coreStart);         // Everything untouched since the last core
+            if (TranslationMetrics.ENABLED) {
+                long started = System.nanoTime();
+                translateWord(text, coreStart, coreEnd, out, encode);
+                TranslationMetrics.record(TranslationMetrics.Stage.WORD, started);
+                TranslationMetrics.word();
+            } else
+                translateWord(text, coreStart, coreEnd, out, encode);
+            span = coreEnd;
+        }
+        out.append(text, span, end);
+    }
+
+    // *****************
+
+    /**
+     * @param c a char
+     * @return true if the char separates the words of text translated keeping its layout: a space, a tab, a line
+     * end, a form feed or any other whitespace of Unicode. A no-break space keeps the words around it together
+     */
+    public static boolean isWhitespace(char c) {
+        if (c <= ' ')
+            return c == ' ' || (c >= '\t' && c <= '\r');
+        return c > 0x7F && Character.isWhitespace(c);
+    }
+
+    // *****************
+
+    /**
+     * This function will translate a word, copying it out of the cache if it was translated before
+     * @param text the text that holds the word
+     * @param start index of the first char of the word
+     * @param end index one past the last char of the word
+     * @param out the buffer to append the translated word to
+     * @param encode true to encode, false to decode
+     */
+    private void translateWord(CharSequence text, int start, int end, StringBuilder out, boolean encode) {
+        WordCache cache = encode ? encodeCache : decodeCache;
+        int translationStart = out.length();           // Where the translation starts in the output
+
+        if (cache != null && cache.appendCached(text, start, end, out))
+            return;
+        if (encode)
+            encodeWord(text, start, end, out);
+        else
+            decodeWord(text, start, end, out);
+        if (cache != null)
+            cache.put(text, start, end, out, translationStart, out.length());
+    }
+
+    // *****************
+
+    /**
+     * This function will encode a word into Pig Latin. The consonants before the first vowel of the core word are
+     * moved behind it, preceded by the separator and followed by the consonant suffix ("ig-pay"). Words that start
+     * with a vowel only get the separator and the vowel suffix ("apple-ay"). If "y" is the last of several of
+     * those consonants it stays where it is, so "my" becomes "y-may". If the dialect keeps "qu" together, a "u"
+     * right after a moved "q" moves along with it.
+     * @param text the text that holds the word
+     * @param start index of the first char of the word
+     * @param end index one past the last char of the word
+     * @param out the buffer to append the encoded word to
+     */
+    public void encodeWord(CharSequence text, int start, int end, StringBuilder out) {
+        int coreStart = skipLeadingSymbols(text, start, end);      // Separate the word into three parts
+        int coreEnd = skipEndingSymbols(text, coreStart, end);
+        int prefixEnd = coreStart;                                 // End of the beginning consonants
+
+        if (coreStart == coreEnd) {                                // Nothing but symbols and numbers
+            out.append(text, start, end);
+            return;
+        }
+        while (prefixEnd < coreEnd && !dialect.isVowel(text.charAt(prefixEnd)))
+            ++prefixEnd;
+        if (isQu(text, coreStart, prefixEnd, coreEnd))             // Move a "qu" together
+            ++prefixEnd;
+        else if (prefixEnd - coreStart > 1 && (dialect.classOf(text.charAt(prefixEnd - 1)) & Dialect.Y) != 0)
+            --prefixEnd;                                           // Keep a "y" ending a cluster in the word
+
+        out.append(text, start, coreStart);                        // Leading symbols
+        out.append(text, prefixEnd, coreEnd);                      // Rest of the word
+        out.append(dialect.separator());
+        out.append(text, coreStart, prefixEnd);                    // Moved consonants
+        out.append(prefixEnd == coreStart ? dialect.vowelSuffix() : dialect.consonantSuffix());
+        out.append(text, coreEnd, end);                            // Ending symbols
+    }
+
+    // *****************
+
+    /**
+     * This function will decode a Pig Latin word. A core word ending in the separator and the vowel suffix loses
+     * them. A core word ending in the consonant suffix gets the consonants between its last separator and the first
+     * vowel after it moved back to its front. Words that end in neither are left alone.
+     * Without a separator there is no telling where the moved consonants start, so the last consonant (or "qu")
+     * before the suffix is moved back. If the dialect's vowel suffix differs from its consonant suffix, a word
+     * ending in the vowel suffix is taken to have started with a vowel. With a lexicon, the other decodings of such
+     * words are tried as well, and the first one that is a known word is picked over the guess.
+     * @param text the text that holds the word
+     * @param start index of the first char of the word
+     * @param end index one past the last char of the word
+     * @param out the buffer to append the decoded word to
+     */
+    public void decodeWord(CharSequence text, int start, int end, StringBuilder out) {
+        int coreStart = skipLeadingSymbols(text, start, end);      // Separate the word into three parts
+        int coreEnd = skipEndingSymbols(text, coreStart, end);
+
+        out.append(text, start, coreStart);                        // Leading symbols
+        if (dialect.separator().length > 0)
+            decodeSeparated(text, coreStart, coreEnd, out);
+        else
+            decodeJoined(text, coreStart, coreEnd, out);
+        out.append(text, coreEnd, end);                            // Ending symbols
+    }
+
+    // *****************
+
+    /**
+     * This function will decode the core of a word of a dialect that separates the moved consonants. A word that
+     * ends in the separator and the vowel suffix started with a vowel, unless the dialect's suffixes differ and the
+     * lexicon knows the word with its consonants moved back but not the word as it is ("ay-way" is "way", not "ay")
+     * @param text the text that holds the word
+     * @param start index of the first char of the core word
+     * @param end index one past the last char of the core word
+     * @param out the buffer to append the decoded core word to
+     */
+    private void decodeSeparated(CharSequence text, int start, int end, StringBuilder out) {
+        char[] separator = dialect.separator();
+        char[] vowelSuffix = dialect.vowelSuffix();
+        int mark = out.length();                                   // Where the decoded word starts in the output
+
+        if (endsWith(text, start, end, vowelSuffix)                // Started with a vowel
+                && endsWith(text, start, end - vowelSuffix.length, separator)) {
+            int suffix = indexOfSuffix(text, start, end, start, start, vowelSuffix);
+            int rest = suffix + separator.length + vowelSuffix.length;
+            if (lexicon != null && !Arrays.equals(vowelSuffix, dialect.consonantSuffix())
+                    && !lexicon.isWord(lexicon.walk(lexicon.walk(Lexicon.ROOT, text, start, suffix), text, rest, end))
+                    && decodeMovedConsonants(text, start, end, out)) {   // Try the consonants moved back instead
+                if (lexicon.contains(out, mark, out.length()))
+                    return;
+                out.setLength(mark);
+            }
+            out.append(text, start, suffix);                      // Take out the first separator + vowel suffix
+            out.append(text, rest, end);
+            return;
+        }
+        if (!decodeMovedConsonants(text, start, end, out))         // Not a Pig Latin word
+            out.append(text, start, end);
+    }
+
+    // *****************
+
+    /**
+     * This function will move the consonants between the last separator of the core word and the first vowel
+     * after it back to the front, and take out the separator and the consonant suffix
+     * @param text the text that holds the word
+     * @param start index of the first char of the core word
+     * @param end index one past the last char of the core word
+     * @param out the buffer to append the decoded core word to
+     * @return false, with nothing appended, if the word has no separator or doesn't end in the consonant suffix
+     */
+    private boolean decodeMovedConsonants(CharSequence text, int start, int end, StringBuilder out) {
+        char[] separator = dialect.separator();
+        int prefixStart = lastIndexOf(text, start, end, separator);   // Start of the consonants after the separator
+        int prefixEnd;                                             // End of those consonants
+        int suffix;                                                // Start of the separator + consonants + suffix
+
+        if (prefixStart < 0 || !endsWith(text, start, end, dialect.consonantSuffix()))
+            return false;
+        prefixStart += separator.length;
+        prefixEnd = prefixStart;
+        while (prefixEnd < end
+                && (!dialect.isVowel(text.charAt(prefixEnd)) || isQu(text, prefixStart, prefixEnd, end)))
+            ++prefixEnd;
+        suffix = indexOfSuffix(text, start, end, prefixStart, prefixEnd, dialect.consonantSuffix());
+
+        out.append(text, prefixStart, prefixEnd);                  // Consonants back at the front
+        if (suffix < 0)                                            // The suffix isn't in the word as it is
+            out.append(text, start, end);
+        else {                                                     // Rest of the word without the suffix
+            out.append(text, start, suffix);
+            out.append(text, suffix + separator.length + prefixEnd - prefixStart
+                    + dialect.consonantSuffix().length, end);
+        }
+        return true;
+    }
+
+    // *****************
+
+    /**
+     * This function will decode the core of a word of a dialect that doesn't separate the moved consonants. The
+     * guess is that one consonant was moved, but with a lexicon every run of consonants before the suffix is tried,
+     * shortest first, and then the word as it is, so "ingstray" becomes "string" rather than "ringst"
+     * @param text the text that holds the word
+     * @param start index of the first char of the core word
+     * @param end index one past the last char of the core word
+     * @param out the buffer to append the decoded core word to
+     */
+    private void decodeJoined(CharSequence text, int start, int end, StringBuilder out) {
+        char[] vowelSuffix = dialect.vowelSuffix();
+        char[] consonantSuffix = dialect.consonantSuffix();
+        boolean sameSuffix = Arrays.equals(vowelSuffix, consonantSuffix);
+        int body = end - consonantSuffix.length;                  // End of the word without the consonant suffix
+        int prefixStart = body - 1;                                // Start of the last consonant before the suffix
+        boolean pigLatin = body > start && endsWith(text, start, end, consonantSuffix);
+
+        if (!sameSuffix && endsWith(text, start, end, vowelSuffix)) {         // Started with a vowel
+            if (lexicon == null || !pigLatin || lexicon.contains(text, start, end - vowelSuffix.length)
+                    || !appendKnownWord(text, start, body, false, out))    // Or else the consonants moved back
+                out.append(text, start, end - vowelSuffix.length);
+            return;
+        }
+        if (!pigLatin) {                                           // Not a Pig Latin word
+            out.append(text, start, end);
+            return;
+        }
+        if (lexicon != null && appendKnownWord(text, start, body, sameSuffix, out))
+            return;
+        if (isQu(text, start, prefixStart, body))                  // The consonant is a "qu"
+            --prefixStart;
+        if (dialect.isVowel(text.charAt(prefixStart))) {           // No moved consonant, so it started with a vowel
+            out.append(text, start, sameSuffix ? body : end);
+            return;
+        }
+        out.append(text, prefixStart, body);                       // Consonant back at the front
+        out.append(text, start, prefixStart);
+    }
+
+    // *****************
+
+    /**
+     * This function will move back more and more of the consonants before the suffix of a joined word until the
+     * decoded word is one the lexicon knows. A "qu" moves as one consonant if the dialect keeps it together
+     * @param text the text that holds the word
+     * @param start index of the first char of the core word
+     * @param body index one past the last char before the suffix
+     * @param orAsItIs true to also try the word before the suffix with nothing moved
+     * @param out the buffer to append the decoded core word to
+     * @return true if a known word was appended, false if none was found and nothing was appended
+     */
+    private boolean appendKnownWord(CharSequence text, int start, int body, boolean orAsItIs, StringBuilder out) {
+        for (int prefixStart = body - 1; prefixStart >= start; --prefixStart) {
+            if (isQu(text, start, prefixStart, body))              // "qu" moved as one
+                --prefixStart;
+            else if (dialect.isVowel(text.charAt(prefixStart)))    // Only consonants are moved
+                break;
+            if (lexicon.isWord(lexicon.walk(lexicon.walk(Lexicon.ROOT, text, prefixStart, body),
+                    text, start, prefixStart))) {
+                out.append(text, prefixStart, body);
+                out.append(text, start, prefixStart);
+                return true;
+            }
+        }
+        if (orAsItIs && lexicon.contains(text, start, body)) {
+            out.append(text, start, body);
+            return true;
+        }
+        return false;
+    }
+
+    // *****************
+
+    /**
+     * This function will check if the word is actually a sequence of symbols and numbers, which should be ignored
+     * in the translations.
+     * @param text the text that holds the word
+     * @param start index of the first char of the word
+     * @param end index one past the last char of the word
+     * @return true if it's a sequence of symbols and numbers, false otherwise
+     */
+    public boolean isSequenceOfSymbols(CharSequence text, int start, int end) {
+        for (int i = start; i < end; ++i) {            // If a character is not a symbol or number, return false
+            if (!dialect.isSymbol(text.charAt(i)))
+                return false;
+        }
+        return true;    // Otherwise, return true, it is a sequence of symbols and numbers
+    }
+
+    // *****************
+
+    /**
+     * This function will check if the char at index is a "u" that follows a "q" of the same cluster, in a dialect
+     * that keeps "qu" together
+     * @param text the text that holds the word
+     * @param clusterStart index of the first char of the cluster
+     * @param index index of the char to check
+     * @param end index one past the last char of the word
+     * @return true if the char continues a "qu"
+     */
+    private boolean isQu(CharSequence text, int clusterStart, int index, int end) {
+        return dialect.keepsQu() && index > clusterStart && index < end
+                && (dialect.classOf(text.charAt(index)) & Dialect.U) != 0
+                && (dialect.classOf(text.charAt(index - 1)) & Dialect.Q) != 0;
+    }
+
+    // *****************
+
+    /**
+     * @return the index of the first char from start on that is not a symbol or number
+     */
+    private int skipLeadingSymbols(CharSequence text, int start, int end) {
+        while (start < end && dialect.isSymbol(text.charAt(start)))
+            ++start;
+        return start;
+    }
+
+    // *****************
+
+    /**
+     * @return the index one past the last char before end that is not a symbol or number
+     */
+    private int skipEndingSymbols(CharSequence text, int start, int end) {
+        while (end > start && dialect.isSymbol(text.charAt(end - 1)))
+            --end;
+        return end;
+    }
+
+    // *****************
+
+    /**
+     * @return true if the range ends with the chars of the pattern
+     */
+    private static boolean endsWith(CharSequence text, int start, int end, char[] pattern) {
+        return end - start >= pattern.length && matchesAt(text, end - pattern.length, pattern);
+    }
+
+    // *****************
+
+    /**
+     * This function will find the first place in the range where separator + consonants + suffix starts. The
+     * consonants are the chars between prefixStart and prefixEnd, there may be none.
+     * @return the index the separator starts at, or -1 if there is none
+     */
+    private int indexOfSuffix(CharSequence text, int start, int end, int prefixStart, int prefixEnd,
+                              char[] suffix) {
+        char[] separator = dialect.separator();
+        int length = prefixEnd - prefixStart;          // Number of consonants
+
+        for (int i = start; i + separator.length + length + suffix.length <= end; ++i) {
+            if (matchesAt(text, i, separator) && regionMatches(text, i + separator.length, prefixStart, length)
+                    && matchesAt(text, i + separator.length + length, suffix))
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+
+    /**
+     * @return true if the chars of the pattern start at the index of the text
+     */
+    private static boolean matchesAt(CharSequence text, int index, char[] pattern) {
+        for (int i = 0; i < pattern.length; ++i) {
+            if (text.charAt(index + i) != pattern[i])
+                return false;
+        }
+        return true;
+    }
+
+    // *****************
+
+    /**
+     * @return true if the length chars starting at first are the same as the length chars starting at second
+     */
+    private static boolean regionMatches(CharSequence text, int first, int second, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (text.charAt(first + i) != text.charAt(second + i))
+                return false;
+        }
+        return true;
+    }
+
+    // *****************
+
+    /**
+     * @return the index where the last copy of the pattern in the range starts, or -1 if there is none
+     */
+    private static int lastIndexOf(CharSequence text, int start, int end, char[] pattern) {
+        for (int i = end - pattern.length; i >= start; --i) {
+            if (matchesAt(text, i, pattern))
+                return i;
+        }
+        return -1;
+    }
+
+    // *****************
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Checks that MarkupTranslator gives the same translation however the reader splits the text. A pipe hands over
+ * whatever has been written so far, so every read can end at a line end and every line can start a new block, with
+ * a tag that goes on from the line before it.
+ *
+ * Run from the project directory:
+ *   javac -d out/test src/*.java test/*.java
+ *   java -cp out/test MarkupTranslatorTest
+ * Exits with 1 if every check passes, like the program, and 4 if one fails.
+ */
+public class MarkupTranslatorTest {
+    private static final String HTML = "<p>Hello world</p>\n<pre class=\"a\"\n>hello world</pre>\n" +
+            "<code\n/> then some text\n<script\ntype=\"text/javascript\"\n>var a = b;</script>\nlast line\n";
+    private static final String MARKDOWN = "# A title\n\n<pre class=\"a\">\nkeep this\n</pre>\n\n```\ncode\n```\n" +
+            "Some `code` and a [link](https://example.com/a_b) here.\n";
+
+    private static int failed = 0;
+
+    // *****************
+
+    public static void main(String[] args) throws IOException {
+        WordTranslator words = new WordTranslator(Dialect.STANDARD);
+
+        for (MarkupTranslator.Format format : MarkupTranslator.Format.values()) {
+            String text = format == MarkupTranslator.Format.HTML ? HTML : MARKDOWN;
+            String whole = translate(new StringReader(text), new MarkupTranslator(words::encodeKeepingLayout, format));
+            String byLine = translate(new LineReader(text), new MarkupTranslator(words::encodeKeepingLayout, format));
+            check(format + " read one line at a time", whole, byLine);
+        }
+        check("HTML raw element whose tag ends on a line of its own", "<pre class=\"a\"\n>hello world</pre>\n",
+                translate(new LineReader("<pre class=\"a\"\n>hello world</pre>\n"),
+                new MarkupTranslator(words::encodeKeepingLayout, MarkupTranslator.Format.HTML)));
+        check("HTML self-closing raw element", "<code\n/> en-thay ext-tay\n",
+                translate(new LineReader("<code\n/> then text\n"),
+                new MarkupTranslator(words::encodeKeepingLayout, MarkupTranslator.Format.HTML)));
+
+        System.out.println(failed == 0 ? "All checks passed." : failed + " checks failed.");
+        System.exit(failed == 0 ? 1 : 4);
+    }
+
+    // *****************
+
+    /**
+     * @return the translation of everything the reader has
+     */
+    private static String translate(Reader in, MarkupTranslator translator) throws IOException {
+        StringWriter out = new StringWriter();
+        translator.translate(in, out, true);
+        return out.toString();
+    }
+
+    // *****************
+
+    /**
+     * This function will print whether the translation is the one expected, and count it if it is not
+     */
+    private static void check(String name, String expected, String actual) {
+        if (expected.equals(actual)) {
+            System.out.println("ok     " + name);
+            return;
+        }
+        System.out.println("FAILED " + name + "\n  expected: " + expected.replace("\n", "\\n") + "\n  actual:   " +
+                actual.replace("\n", "\\n"));
+        ++failed;
+    }
+
+    // *****************
+
+    /**
+     * A reader that returns at most one line per read, like a pipe that a line is written to at a time
+     */
+    private static final class LineReader extends Reader {
+        private final String text;
+        private int position;
+
+        LineReader(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length())
+                return -1;
+            int lineEnd = text.indexOf('\n', position);
+            int end = Math.min(lineEnd < 0 ? text.length() : lineEnd + 1, position + length);
+            text.getChars(position, end, buffer, offset);
+            int count = end - position;
+            position = end;
+            return count;
+        }
+
+        @Override
+        public boolean ready() {
+            return false;                                  // Every line is a pipe waiting for the next one
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // *****************
+}